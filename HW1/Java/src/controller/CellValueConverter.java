@@ -0,0 +1,171 @@
+package controller;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+
+/**
+ * Converts the values of the cells of one workbook to text. Whether a cell style
+ * formats numbers as dates is decided once per style index, dates are formatted
+ * with a shared DateTimeFormatter and short values are interned, so the many
+ * repeated values of a sheet (day names, course codes, small numbers) share one
+ * String. Instances may be used by several threads reading sheets of the same workbook.
+ */
+class CellValueConverter {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // Values longer than this are rarely repeated and are not interned
+    private static final int MAX_INTERNED_LENGTH = 48;
+
+    // Upper bound of distinct interned values per workbook
+    private static final int MAX_INTERNED_VALUES = 1 << 16;
+
+    private static final byte STYLE_UNKNOWN = 0;
+    private static final byte STYLE_NUMBER = 1;
+    private static final byte STYLE_DATE = 2;
+
+    private final boolean date1904;
+    private final IntPredicate dateStyleLookup;
+
+    // Evaluator of the formulas of the workbook, null to use the cached formula results
+    private final FormulaEvaluator formulaEvaluator;
+
+    // Date decision of every style index seen so far, replaced by a larger copy when it grows
+    private volatile byte[] dateStyles = new byte[64];
+
+    private final Map<String, String> internedValues = new ConcurrentHashMap<>();
+
+    /**
+     * @param date1904 true if the workbook counts dates from 1904 instead of 1900
+     * @param dateStyleLookup Tells whether the style with a given index has a date format, used by
+     *                        {@link #isDateStyle(int)}; may be null if only styles are passed in
+     */
+    CellValueConverter(boolean date1904, IntPredicate dateStyleLookup) {
+        this(date1904, dateStyleLookup, null);
+    }
+
+    /**
+     * @param date1904 true if the workbook counts dates from 1904 instead of 1900
+     * @param dateStyleLookup Tells whether the style with a given index has a date format; may be null
+     * @param formulaEvaluator Evaluator shared by all formula cells of the workbook, or null to
+     *                         use the results cached in the file
+     */
+    CellValueConverter(boolean date1904, IntPredicate dateStyleLookup, FormulaEvaluator formulaEvaluator) {
+        this.date1904 = date1904;
+        this.dateStyleLookup = dateStyleLookup;
+        this.formulaEvaluator = formulaEvaluator;
+    }
+
+    /**
+     * Evaluate a formula cell. The evaluator keeps the result of every cell it computed,
+     * so cells many formulas depend on are computed only once per workbook.
+     * @param cell Formula cell
+     * @return Result of the formula, or null if formulas are not evaluated or the formula cannot be evaluated
+     */
+    CellValue evaluate(Cell cell) {
+        if (formulaEvaluator == null) {
+            return null;
+        }
+        try {
+            return formulaEvaluator.evaluate(cell);
+        } catch (RuntimeException e) {
+            // Unsupported functions and broken references keep the cached result
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a cell style formats numbers as dates
+     * @param style Style of the cell, may be null
+     * @return true for date formats
+     */
+    boolean isDateStyle(CellStyle style) {
+        if (style == null) {
+            return false;
+        }
+        int styleIndex = style.getIndex() & 0xFFFF;
+        byte known = knownStyle(styleIndex);
+        if (known != STYLE_UNKNOWN) {
+            return known == STYLE_DATE;
+        }
+        return rememberStyle(styleIndex, DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString()));
+    }
+
+    /**
+     * Check whether the cell style with an index formats numbers as dates
+     * @param styleIndex Index of the cell style
+     * @return true for date formats
+     */
+    boolean isDateStyle(int styleIndex) {
+        if (styleIndex < 0) {
+            return false;
+        }
+        byte known = knownStyle(styleIndex);
+        if (known != STYLE_UNKNOWN) {
+            return known == STYLE_DATE;
+        }
+        return rememberStyle(styleIndex, dateStyleLookup.test(styleIndex));
+    }
+
+    /**
+     * Convert a numeric cell value to text: a date as yyyy-MM-dd, an integral number
+     * without decimals, any other number as a double
+     * @param value Cell value
+     * @param dateStyle true if the cell style has a date format
+     * @return Cell text
+     */
+    String numericValue(double value, boolean dateStyle) {
+        if (dateStyle && DateUtil.isValidExcelDate(value)) {
+            return intern(DateUtil.getLocalDateTime(value, date1904).format(DATE_FORMAT));
+        }
+        if (value == Math.floor(value)) {
+            // It's an integer value, remove decimal part
+            return intern(String.valueOf((int) value));
+        }
+        return intern(String.valueOf(value));
+    }
+
+    /**
+     * Return the shared instance of a short value
+     * @param value Cell text
+     * @return Equal string, shared with the other cells of the workbook that have it
+     */
+    String intern(String value) {
+        if (value.length() > MAX_INTERNED_LENGTH) {
+            return value;
+        }
+        String interned = internedValues.get(value);
+        if (interned != null) {
+            return interned;
+        }
+        if (internedValues.size() >= MAX_INTERNED_VALUES) {
+            return value;
+        }
+        interned = internedValues.putIfAbsent(value, value);
+        return interned != null ? interned : value;
+    }
+
+    private byte knownStyle(int styleIndex) {
+        byte[] known = dateStyles;
+        return styleIndex < known.length ? known[styleIndex] : STYLE_UNKNOWN;
+    }
+
+    private synchronized boolean rememberStyle(int styleIndex, boolean dateStyle) {
+        byte[] known = dateStyles;
+        if (styleIndex >= known.length) {
+            known = Arrays.copyOf(known, Math.max(styleIndex + 1, known.length * 2));
+        }
+        known[styleIndex] = dateStyle ? STYLE_DATE : STYLE_NUMBER;
+        dateStyles = known;
+        return dateStyle;
+    }
+}
@@ -0,0 +1,269 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import model.TableData;
+
+/**
+ * Part of a file to extract: the columns to keep, the rows to keep and the pages or
+ * sheets to read. The extractors apply the request while reading, so pages and
+ * sheets outside the range are never parsed and the cells of columns that are not
+ * kept are never converted to text. Columns are selected by header, ignoring case
+ * and surrounding spaces; tables without any of the columns are left out.
+ */
+public final class ExtractionRequest {
+
+    /** Request for every column and row of every page and sheet */
+    public static final ExtractionRequest ALL = builder().build();
+
+    private final List<String> columns;
+    private final String filterColumn;
+    private final Predicate<String> filter;
+    private final int firstPage;
+    private final int endPage;
+    private final int firstSheet;
+    private final int endSheet;
+
+    private ExtractionRequest(Builder builder) {
+        this.columns = builder.columns;
+        this.filterColumn = builder.filterColumn;
+        this.filter = builder.filter;
+        this.firstPage = builder.firstPage;
+        this.endPage = builder.endPage;
+        this.firstSheet = builder.firstSheet;
+        this.endSheet = builder.endSheet;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if the request keeps everything, so the result can be cached
+     */
+    public boolean isAll() {
+        return columns == null && filter == null && firstPage == 0 && endPage == Integer.MAX_VALUE
+                && firstSheet == 0 && endSheet == Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return Headers of the kept columns in output order, or null to keep all columns
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param pageIndex Zero-based page index
+     * @return true if the page is in the requested page range
+     */
+    public boolean includesPage(int pageIndex) {
+        return pageIndex >= firstPage && pageIndex < endPage;
+    }
+
+    /**
+     * @param sheetIndex Zero-based sheet index
+     * @return true if the sheet is in the requested sheet range
+     */
+    public boolean includesSheet(int sheetIndex) {
+        return sheetIndex >= firstSheet && sheetIndex < endSheet;
+    }
+
+    int getFirstPage() {
+        return firstPage;
+    }
+
+    int getEndPage() {
+        return endPage;
+    }
+
+    int getFirstSheet() {
+        return firstSheet;
+    }
+
+    int getEndSheet() {
+        return endSheet;
+    }
+
+    /**
+     * Find the kept columns in the headers of a table
+     * @param headers Headers of the table
+     * @return Position of each kept column in the headers, in output order
+     */
+    int[] columnPositions(List<String> headers) {
+        if (columns == null) {
+            int[] positions = new int[headers.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            return positions;
+        }
+
+        int[] positions = new int[columns.size()];
+        int count = 0;
+        for (String column : columns) {
+            int position = headerPosition(headers, column);
+            if (position >= 0) {
+                positions[count++] = position;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * @return true if rows are filtered by the value of a column
+     */
+    boolean hasRowFilter() {
+        return filter != null;
+    }
+
+    /**
+     * @param headers Headers of the table
+     * @return Position of the filtered column in the headers, or -1 if the table does not have it
+     */
+    int filterPosition(List<String> headers) {
+        return filter != null ? headerPosition(headers, filterColumn) : -1;
+    }
+
+    /**
+     * @param value Value of the filtered column in a row
+     * @return true if the row is kept
+     */
+    boolean accepts(String value) {
+        return filter == null || filter.test(value);
+    }
+
+    /**
+     * Apply the column projection and the row filter to a table that was read completely.
+     * Rows whose kept cells are all empty are left out.
+     * @param table Table with all columns and rows
+     * @return Table with the kept columns and rows, or null if nothing is kept
+     */
+    TableData apply(TableData table) {
+        if (columns == null && filter == null) {
+            return table;
+        }
+
+        List<String> headers = table.getHeaders();
+        int[] positions = columnPositions(headers);
+        int filterPosition = filterPosition(headers);
+        if (positions.length == 0 || (filter != null && filterPosition < 0)) {
+            return null;
+        }
+
+        TableData.Builder result = TableData.builder(table.getTableName());
+        for (int position : positions) {
+            result.addHeader(headers.get(position));
+        }
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (filter != null && !accepts(table.getValue(row, filterPosition))) {
+                continue;
+            }
+            List<String> projected = new ArrayList<>(positions.length);
+            boolean hasData = false;
+            for (int position : positions) {
+                String value = table.getValue(row, position);
+                projected.add(value);
+                hasData |= !value.trim().isEmpty();
+            }
+
+            // Like the extractors, only keep rows with some non-empty cells
+            if (hasData) {
+                result.addRow(projected);
+            }
+        }
+        return result.getRowCount() > 0 ? result.build() : null;
+    }
+
+    private static int headerPosition(List<String> headers, String column) {
+        for (int i = 0; i < headers.size(); i++) {
+            if (headers.get(i).trim().equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builder of extraction requests; everything is kept unless restricted
+     */
+    public static final class Builder {
+        private List<String> columns;
+        private String filterColumn;
+        private Predicate<String> filter;
+        private int firstPage;
+        private int endPage = Integer.MAX_VALUE;
+        private int firstSheet;
+        private int endSheet = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * Keep only some columns
+         * @param headers Headers of the kept columns, in output order
+         * @return This builder
+         */
+        public Builder columns(String... headers) {
+            List<String> trimmed = new ArrayList<>();
+            for (String header : headers) {
+                trimmed.add(header.trim());
+            }
+            this.columns = Collections.unmodifiableList(trimmed);
+            return this;
+        }
+
+        /**
+         * Keep only the rows whose value in a column passes a test, e.g. a course prefix.
+         * The column does not have to be one of the kept columns.
+         * @param header Header of the tested column
+         * @param condition Test of the column value
+         * @return This builder
+         */
+        public Builder rows(String header, Predicate<String> condition) {
+            this.filterColumn = header.trim();
+            this.filter = condition;
+            return this;
+        }
+
+        /**
+         * Read only a range of PDF pages
+         * @param fromIndex Zero-based index of the first page
+         * @param toIndex Zero-based index after the last page
+         * @return This builder
+         */
+        public Builder pages(int fromIndex, int toIndex) {
+            checkRange(fromIndex, toIndex);
+            this.firstPage = fromIndex;
+            this.endPage = toIndex;
+            return this;
+        }
+
+        /**
+         * Read only a range of Excel sheets
+         * @param fromIndex Zero-based index of the first sheet
+         * @param toIndex Zero-based index after the last sheet
+         * @return This builder
+         */
+        public Builder sheets(int fromIndex, int toIndex) {
+            checkRange(fromIndex, toIndex);
+            this.firstSheet = fromIndex;
+            this.endSheet = toIndex;
+            return this;
+        }
+
+        public ExtractionRequest build() {
+            return new ExtractionRequest(this);
+        }
+
+        private static void checkRange(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex < fromIndex) {
+                throw new IllegalArgumentException("Invalid range: " + fromIndex + " to " + toIndex);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package controller;
+
+/**
+ * Trade-off between speed and accuracy of the PDF table extraction
+ */
+public enum ExtractionTier {
+    /** Split the text lines into columns at wide gaps between words; no grid detection */
+    FAST,
+    /** Detect the table grid from ruling lines or text regions, falling back to the page text */
+    ACCURATE,
+    /** Use the fast split and move up to the accurate extraction for pages where it looks wrong */
+    AUTO
+}
@@ -3,31 +3,47 @@ package controller;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import model.ConversionReport;
+import model.ConversionResult;
+import model.PageLayout;
 import model.TableData;
+import util.ColumnTokenizer;
+import util.CoordinateClusterer;
 import util.FileValidator;
+import util.MergedRegionIndex;
+import util.ResultCache;
+import util.SharedResourceCache;
+import util.StageTimer;
 
 // PDF processing imports
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.pdfbox.text.PDFTextStripperByArea;
-import java.awt.Rectangle;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.TextPosition;
 
 // Excel processing imports
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.Date1904Support;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 
@@ -36,10 +52,329 @@ import org.apache.poi.hssf.usermodel.HSSFWorkbook;
  */
 public class FileController {
     
-    private List<TableData> tableDataList;
+    /**
+     * Version of the extraction logic, part of the result cache key.
+     * Increase it whenever a change alters the tables extracted from a file.
+     */
+    public static final String EXTRACTOR_VERSION = "6";
+    
+    // Number of threads used to extract the pages of a PDF (1 = sequential)
+    private volatile int pdfParallelism = 1;
+    
+    // Number of threads reading the sheets of an .xlsx workbook (1 = sequential)
+    private volatile int excelParallelism = 1;
+    
+    // Cache of previously extracted files, null if caching is disabled
+    private volatile ResultCache resultCache;
+    
+    // Main memory a loaded PDF may use before its data spills to a scratch file
+    private volatile long pdfMemoryBudget = DEFAULT_PDF_MEMORY_BUDGET;
+    
+    // Directory of the scratch files, null for the default temporary directory
+    private volatile File pdfScratchDirectory;
+    
+    // Join tables that continue on the next page into one table
+    private volatile boolean stitchPageTables = true;
+    
+    // Read .xlsx and .xls workbooks with the streaming readers instead of the workbook object model
+    private volatile boolean excelStreaming = true;
+    
+    // Evaluate the formulas of workbooks instead of using the results cached in the file
+    private volatile boolean evaluateFormulas;
+    
+    // Give the cells covered by merged regions the value of the region
+    private volatile boolean fillMergedCells;
+    
+    // How much work the PDF table extraction spends on each page
+    private volatile ExtractionTier extractionTier = ExtractionTier.ACCURATE;
+    
+    // Fonts shared by the PDF documents this controller loads, null to parse fonts per document
+    private volatile SharedResourceCache sharedResourceCache;
+    
+    private static final long DEFAULT_PDF_MEMORY_BUDGET = 64L * 1024 * 1024;
+    
+    // Print page and sheet counts, page texts and conversion reports to the console
+    private volatile boolean debug = Boolean.getBoolean("transformer.debug");
+    
+    /**
+     * Set how many threads extract the pages of a PDF file.
+     * Every thread loads its own copy of the document because PDFBox objects are not thread-safe.
+     * @param pdfParallelism Number of threads, 1 for sequential processing
+     */
+    public void setPdfParallelism(int pdfParallelism) {
+        if (pdfParallelism < 1) {
+            throw new IllegalArgumentException("PDF parallelism must be at least 1: " + pdfParallelism);
+        }
+        this.pdfParallelism = pdfParallelism;
+    }
+    
+    public int getPdfParallelism() {
+        return pdfParallelism;
+    }
+    
+    /**
+     * Set how many threads read the sheets of a streamed .xlsx workbook. Every extra thread
+     * opens its own copy of the package; the tables keep the order of the sheets.
+     * Legacy .xls workbooks are a single record stream and are always read by one thread.
+     * @param excelParallelism Number of threads, 1 for sequential processing
+     */
+    public void setExcelParallelism(int excelParallelism) {
+        if (excelParallelism < 1) {
+            throw new IllegalArgumentException("Excel parallelism must be at least 1: " + excelParallelism);
+        }
+        this.excelParallelism = excelParallelism;
+    }
+    
+    public int getExcelParallelism() {
+        return excelParallelism;
+    }
+    
+    /**
+     * Set how much main memory loaded PDF documents may use. Data beyond the budget
+     * is kept in a scratch file instead of the heap. With parallel extraction the
+     * budget is shared by the documents the workers load.
+     * @param pdfMemoryBudget Budget in bytes, or -1 to keep everything in main memory
+     */
+    public void setPdfMemoryBudget(long pdfMemoryBudget) {
+        if (pdfMemoryBudget < -1) {
+            throw new IllegalArgumentException("PDF memory budget must be -1 or at least 0: " + pdfMemoryBudget);
+        }
+        this.pdfMemoryBudget = pdfMemoryBudget;
+    }
+    
+    public long getPdfMemoryBudget() {
+        return pdfMemoryBudget;
+    }
+    
+    /**
+     * Set the directory of the scratch files PDF documents spill to
+     * @param pdfScratchDirectory Directory, or null for the default temporary directory
+     */
+    public void setPdfScratchDirectory(File pdfScratchDirectory) {
+        this.pdfScratchDirectory = pdfScratchDirectory;
+    }
+    
+    public File getPdfScratchDirectory() {
+        return pdfScratchDirectory;
+    }
+    
+    /**
+     * Set whether a table that continues on the following pages is joined into one table.
+     * A page continues the table of the previous page if it repeats its headers or has
+     * the same column boundaries. Applies to batch and streaming PDF extraction.
+     * @param stitchPageTables true to join continued tables, false for one table per page
+     */
+    public void setStitchPageTables(boolean stitchPageTables) {
+        this.stitchPageTables = stitchPageTables;
+    }
+    
+    public boolean isStitchPageTables() {
+        return stitchPageTables;
+    }
+    
+    /**
+     * Set whether .xlsx and .xls workbooks are streamed row by row instead of being loaded
+     * into the workbook object model. Both give the same tables; streaming keeps the heap
+     * small on large workbooks.
+     * @param excelStreaming true to stream workbooks
+     */
+    public void setExcelStreaming(boolean excelStreaming) {
+        this.excelStreaming = excelStreaming;
+    }
+    
+    public boolean isExcelStreaming() {
+        return excelStreaming;
+    }
+    
+    /**
+     * Set whether the formulas of Excel workbooks are evaluated instead of showing the
+     * results cached in the file, for generated workbooks that were never calculated.
+     * Each workbook is evaluated by one evaluator that remembers the result of every
+     * cell, so cells many formulas depend on are computed once. Evaluation needs the
+     * workbook object model, so workbooks are not streamed in this mode.
+     * @param evaluateFormulas true to evaluate formulas
+     */
+    public void setEvaluateFormulas(boolean evaluateFormulas) {
+        this.evaluateFormulas = evaluateFormulas;
+    }
+    
+    public boolean isEvaluateFormulas() {
+        return evaluateFormulas;
+    }
     
-    public FileController() {
-        tableDataList = new ArrayList<>();
+    /**
+     * Set whether the cells covered by a merged region of an Excel sheet get the value of
+     * the region, such as a course spanning two time rows of a schedule. Otherwise only the
+     * top-left cell of a region has a value, as in the file.
+     * @param fillMergedCells true to fill merged cells
+     */
+    public void setFillMergedCells(boolean fillMergedCells) {
+        this.fillMergedCells = fillMergedCells;
+    }
+    
+    public boolean isFillMergedCells() {
+        return fillMergedCells;
+    }
+    
+    /**
+     * Set how the tables of PDF pages are extracted. The fast tier splits the text lines
+     * at wide gaps and suits latency-sensitive callers; the auto tier does the same but
+     * extracts a page again with the accurate tier if the rows of the fast result do not
+     * have a consistent number of columns.
+     * @param extractionTier Extraction tier, ACCURATE by default
+     */
+    public void setExtractionTier(ExtractionTier extractionTier) {
+        if (extractionTier == null) {
+            throw new IllegalArgumentException("Extraction tier must not be null");
+        }
+        this.extractionTier = extractionTier;
+    }
+    
+    public ExtractionTier getExtractionTier() {
+        return extractionTier;
+    }
+    
+    /**
+     * @return Stitcher joining the page tables according to the current setting
+     */
+    TableStitcher createTableStitcher() {
+        return new TableStitcher(stitchPageTables);
+    }
+    
+    /**
+     * Compute the result cache key of a PDF file for the current extraction settings
+     * @param file PDF file
+     * @return Cache key, or null if caching is disabled or the file cannot be read
+     */
+    String pdfCacheKey(File file) {
+        return cacheKey(file, "pdf/" + extractionTier.name().toLowerCase() + (stitchPageTables ? "/stitched" : ""));
+    }
+    
+    /**
+     * Compute the result cache key of the page tables of a lazily extracted PDF file, which
+     * hold one table per page instead of the tables of {@link #pdfCacheKey(File)}
+     * @param file PDF file
+     * @return Cache key, or null if caching is disabled or the file cannot be read
+     */
+    String pdfPagesCacheKey(File file) {
+        return cacheKey(file, "pdf-pages/" + extractionTier.name().toLowerCase());
+    }
+    
+    /**
+     * Share parsed fonts between the PDF documents this controller loads. Useful for batches
+     * of files made from the same template, which embed the same fonts.
+     * @param sharedResourceCache Shared cache, or null to parse the fonts of every document again
+     */
+    public void setSharedResourceCache(SharedResourceCache sharedResourceCache) {
+        this.sharedResourceCache = sharedResourceCache;
+    }
+    
+    public SharedResourceCache getSharedResourceCache() {
+        return sharedResourceCache;
+    }
+    
+    /**
+     * Load a PDF document within a share of the memory budget
+     * @param file PDF file
+     * @param documentCount Number of documents loaded at the same time that share the budget
+     * @return Loaded document
+     */
+    PDDocument loadPdf(File file, int documentCount) throws IOException {
+        MemoryUsageSetting memoryUsage;
+        if (pdfMemoryBudget < 0) {
+            memoryUsage = MemoryUsageSetting.setupMainMemoryOnly();
+        } else {
+            memoryUsage = MemoryUsageSetting.setupMixed(pdfMemoryBudget / documentCount);
+            if (pdfScratchDirectory != null) {
+                memoryUsage.setTempDir(pdfScratchDirectory);
+            }
+        }
+        PDDocument document = PDDocument.load(file, memoryUsage);
+        if (sharedResourceCache != null) {
+            document.setResourceCache(sharedResourceCache.forDocument());
+        }
+        return document;
+    }
+    
+    /**
+     * Close a PDF document loaded by {@link #loadPdf(File, int)} and hand its fonts back to the
+     * shared resource cache, so that documents converted on other threads can use them
+     * @param document Document to close
+     */
+    void closePdf(PDDocument document) throws IOException {
+        SharedResourceCache.release(document);
+        document.close();
+    }
+    
+    /**
+     * Turn console output of page and sheet counts, page texts and conversion reports on or off.
+     * Defaults to the system property transformer.debug.
+     * @param debug true to print debug output
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+    
+    public boolean isDebug() {
+        return debug;
+    }
+    
+    /**
+     * Start the report of a new conversion
+     * @param file Converted file
+     * @return Empty report
+     */
+    ConversionReport startReport(File file) {
+        return new ConversionReport(file.getName());
+    }
+    
+    /**
+     * Print the report of a finished conversion in debug mode
+     * @param report Conversion report
+     */
+    void finishReport(ConversionReport report) {
+        if (debug) {
+            System.out.print(report);
+        }
+    }
+    
+    /**
+     * Set the cache used to skip extraction of files that were converted before
+     * @param resultCache Result cache, or null to disable caching
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+    
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+    
+    /**
+     * Compute the result cache key of a file
+     * @param file Source file
+     * @param kind Kind of extraction, e.g. "pdf" or "excel"
+     * @return Cache key, or null if caching is disabled or the file cannot be read
+     */
+    String cacheKey(File file, String kind) {
+        if (resultCache == null) {
+            return null;
+        }
+        try {
+            return resultCache.key(file, EXTRACTOR_VERSION + "/" + kind);
+        } catch (IOException e) {
+            System.err.println("Cannot compute cache key of " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Look up the cached tables of a file
+     * @param cacheKey Cache key from {@link #cacheKey(File, String)}, may be null
+     * @return Cached tables, or null if there are none
+     */
+    List<TableData> getCachedTables(String cacheKey) {
+        return cacheKey != null ? resultCache.get(cacheKey) : null;
     }
     
     /**
@@ -48,118 +383,518 @@ public class FileController {
      * @return List of extracted table data
      */
     public List<TableData> processPdfFile(File file) {
+        return processPdfFile(file, ExtractionRequest.ALL);
+    }
+    
+    /**
+     * Process part of a PDF file
+     * @param file PDF file
+     * @param request Pages, columns and rows to extract
+     * @return List of extracted table data
+     */
+    public List<TableData> processPdfFile(File file, ExtractionRequest request) {
+        return convertPdfFile(file, request).getTables();
+    }
+    
+    /**
+     * Convert part of a PDF file. Pages outside the requested range are not parsed; the
+     * columns and rows of the request are selected from the tables of the read pages.
+     * Results of partial requests are not cached. Conversions may run on several threads
+     * at once; the controller keeps nothing of a conversion after it returns.
+     * @param file PDF file
+     * @param request Pages, columns and rows to extract
+     * @return Tables and stage timings of this conversion
+     */
+    public ConversionResult convertPdfFile(File file, ExtractionRequest request) {
+        ConversionReport report = startReport(file);
+        
         // Validate file before processing
         if (!FileValidator.isValidPdfFile(file)) {
             System.err.println("Invalid PDF file: " + file.getName());
-            return tableDataList;
+            return new ConversionResult(file.getName(), Collections.emptyList(), report, false, false);
         }
         
-        try (PDDocument document = PDDocument.load(file)) {
-            // Get document information
-            int pageCount = document.getNumberOfPages();
-            System.out.println("PDF document loaded. Number of pages: " + pageCount);
+        // Reuse the tables of a file that was converted before
+        StageTimer cacheTimer = StageTimer.start(report, "cache lookup", -1);
+        String cacheKey = request.isAll() ? pdfCacheKey(file) : null;
+        List<TableData> cachedTables = getCachedTables(cacheKey);
+        cacheTimer.stop();
+        if (cachedTables != null) {
+            finishReport(report);
+            return new ConversionResult(file.getName(), cachedTables, report, true);
+        }
+        
+        List<TableData> fileTables = new ArrayList<>();
+        boolean successful = true;
+        try {
+            // Extract every page, results are in page order
+            List<PageExtraction> pages = extractPages(file, request, report);
             
-            // Create table data for each page that might contain a table
-            for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
-                String pageName = "Page " + (pageIndex + 1);
-                
-                // Try to extract text using the improved region-based method
-                TableData tableFromRegions = extractTableByRegions(document, pageIndex, pageName);
-                if (tableFromRegions != null && !tableFromRegions.getRows().isEmpty()) {
-                    tableDataList.add(tableFromRegions);
-                    continue; // Skip other methods if region-based extraction was successful
-                }
-                
-                // If region-based extraction failed, fall back to text-based extraction
-                PDFTextStripper textStripper = new PDFTextStripper();
-                textStripper.setStartPage(pageIndex + 1);
-                textStripper.setEndPage(pageIndex + 1);
-                textStripper.setSortByPosition(true);
-                String pageText = textStripper.getText(document);
-                
-                // Print extracted text to console
-                System.out.println("------- Extracted Text from " + pageName + " -------");
-                System.out.println(pageText);
-                System.out.println("-------------------------------------------");
-                
-                // Try to process the page as a table using text-based analysis
-                TableData pageTable = extractTableFromPage(pageText, pageName);
-                
-                // Only add if the table has content
-                if (pageTable != null && !pageTable.getRows().isEmpty()) {
-                    tableDataList.add(pageTable);
+            StringBuilder documentText = new StringBuilder();
+            boolean tableFound = false;
+            for (PageExtraction page : pages) {
+                documentText.append(page.getText());
+                if (page.getTable() != null) {
+                    tableFound = true;
                 }
             }
             
-            // If no tables were found, create a simple text representation
-            if (tableDataList.isEmpty()) {
-                PDFTextStripper stripper = new PDFTextStripper();
-                String text = stripper.getText(document);
-                
-                TableData textTable = new TableData("Text content from " + file.getName());
-                textTable.addHeader("Content");
-                
-                // Split text by lines and add as rows
-                String[] lines = text.split("\\r?\\n");
-                for (String line : lines) {
-                    if (!line.trim().isEmpty()) {
-                        List<String> row = new ArrayList<>();
-                        row.add(line.trim());
-                        textTable.addRow(row);
+            // Pages without a table are kept as plain text next to the tables of the other pages
+            if (tableFound) {
+                TableStitcher stitcher = createTableStitcher();
+                for (PageExtraction page : pages) {
+                    if (page.getTable() != null) {
+                        addTable(fileTables, stitcher.add(page));
+                    } else {
+                        // A page without a table ends a table continued over several pages
+                        addTable(fileTables, stitcher.finish());
+                        if (page.isTextPage()) {
+                            fileTables.add(createTextTable(page.getText(), "Page " + (page.getPageIndex() + 1)));
+                        }
                     }
                 }
-                
-                tableDataList.add(textTable);
+                addTable(fileTables, stitcher.finish());
+            }
+            
+            // If no tables were found, create a simple text representation
+            if (fileTables.isEmpty()) {
+                StageTimer textTimer = StageTimer.start(report, "document text fallback", -1);
+                fileTables.add(createTextTable(documentText.toString(), file.getName()));
+                textTimer.stop();
+            }
+            
+            if (!request.isAll()) {
+                fileTables = selectTables(fileTables, request);
+            }
+            
+            if (cacheKey != null) {
+                StageTimer storeTimer = StageTimer.start(report, "cache store", -1);
+                resultCache.put(cacheKey, fileTables);
+                storeTimer.stop();
             }
             
         } catch (IOException e) {
+            successful = false;
             System.err.println("Error processing PDF file: " + e.getMessage());
             e.printStackTrace();
             
             // If there's an error, create a simple table with error information
-            TableData errorTable = new TableData("Error - " + file.getName());
-            errorTable.addHeader("Error Message");
-            List<String> errorRow = new ArrayList<>();
-            errorRow.add("Error processing PDF file: " + e.getMessage());
-            errorTable.addRow(errorRow);
-            tableDataList.add(errorTable);
+            fileTables = Collections.singletonList(createErrorTable("Error processing PDF file: " + e.getMessage(), 
+                    "Error Message", file.getName()));
         }
         
-        return tableDataList;
+        finishReport(report);
+        return new ConversionResult(file.getName(), fileTables, report, false, successful);
     }
     
     /**
-     * Extract table using a region-based approach for better structure preservation
+     * Select the requested columns and rows of tables that were extracted completely
+     * @param tables Extracted tables
+     * @param request Columns and rows to keep
+     * @return Tables with at least one selected row
+     */
+    private List<TableData> selectTables(List<TableData> tables, ExtractionRequest request) {
+        List<TableData> selectedTables = new ArrayList<>();
+        for (TableData table : tables) {
+            addTable(selectedTables, request.apply(table));
+        }
+        return selectedTables;
+    }
+    
+    /**
+     * Add a table to a list unless it is null
+     * @param tables List of tables
+     * @param table Table to add, may be null
+     */
+    private void addTable(List<TableData> tables, TableData table) {
+        if (table != null) {
+            tables.add(table);
+        }
+    }
+    
+    /**
+     * Stream the tables of a PDF file page by page instead of waiting for the whole document.
+     * Each page's table is published as soon as it is extracted, with backpressure from the subscriber.
+     * @param file PDF file
+     * @return Publisher of the extracted table data, in page order
+     */
+    public Flow.Publisher<TableData> streamPdfFile(File file) {
+        return streamPdfFile(file, ExtractionRequest.ALL);
+    }
+    
+    /**
+     * Stream the tables of part of a PDF file page by page. The published tables are the
+     * same as those returned by {@link #convertPdfFile(File, ExtractionRequest)}.
+     * @param file PDF file
+     * @param request Pages, columns and rows to extract
+     * @return Publisher of the extracted table data, in page order
+     */
+    public Flow.Publisher<TableData> streamPdfFile(File file, ExtractionRequest request) {
+        return new PdfTablePublisher(this, file, request);
+    }
+    
+    /**
+     * Open a PDF file for on-demand extraction. Only the page count and page titles are
+     * read up front; each page is extracted when it is first requested or prefetched.
+     * Unlike {@link #processPdfFile(File)}, every page gives one table and pages without a
+     * table give their plain text. The page tables are taken from the result cache if the
+     * file was opened before, and stored in it once every page has been extracted.
+     * @param file PDF file
+     * @return Lazily extracted document, to be closed by the caller
+     */
+    public LazyPdfDocument openLazyPdf(File file) throws IOException {
+        if (!FileValidator.isValidPdfFile(file)) {
+            throw new IOException("Invalid PDF file: " + file.getName());
+        }
+        LazyPdfDocument lazyDocument = new LazyPdfDocument(this, file);
+        lazyDocument.open();
+        return lazyDocument;
+    }
+    
+    /**
+     * Create a table with one row per non-empty line of text
+     * @param text Text of the document or page
+     * @param fileName Name of the source file or page
+     * @return TableData with the text content
+     */
+    TableData createTextTable(String text, String fileName) {
+        TableData.Builder textTable = TableData.builder("Text content from " + fileName);
+        textTable.addHeader("Content");
+        
+        // Split text by lines and add as rows
+        String[] lines = text.split("\\r?\\n");
+        for (String line : lines) {
+            if (!line.trim().isEmpty()) {
+                List<String> row = new ArrayList<>();
+                row.add(line.trim());
+                textTable.addRow(row);
+            }
+        }
+        
+        return textTable.build();
+    }
+    
+    /**
+     * Create a simple table with error information
+     * @param message Error message
+     * @param header Header of the message column
+     * @param fileName Name of the source file
+     * @return TableData with the error message
+     */
+    TableData createErrorTable(String message, String header, String fileName) {
+        TableData.Builder errorTable = TableData.builder("Error - " + fileName);
+        errorTable.addHeader(header);
+        List<String> errorRow = new ArrayList<>();
+        errorRow.add(message);
+        errorTable.addRow(errorRow);
+        return errorTable.build();
+    }
+    
+    /**
+     * Extract the requested pages of a PDF file, using worker threads when parallelism is enabled
+     * @param file PDF file
+     * @param request Request giving the range of pages
+     * @param report Report receiving the stage timings
+     * @return Extraction result of each page in the range, in page order
+     */
+    private List<PageExtraction> extractPages(File file, ExtractionRequest request, ConversionReport report)
+            throws IOException {
+        StageTimer loadTimer = StageTimer.start(report, "document load", -1);
+        PDDocument document = loadPdf(file, pdfParallelism);
+        loadTimer.stop();
+        
+        try {
+            // Get document information
+            int pageCount = document.getNumberOfPages();
+            if (debug) {
+                System.out.println("PDF document loaded. Number of pages: " + pageCount);
+            }
+            
+            // Pages outside the requested range are never parsed
+            int firstPage = Math.min(request.getFirstPage(), pageCount);
+            int endPage = Math.min(request.getEndPage(), pageCount);
+            PageExtraction[] pages = new PageExtraction[pageCount];
+            AtomicInteger nextPage = new AtomicInteger(firstPage);
+            
+            int workerCount = Math.min(pdfParallelism, endPage - firstPage);
+            
+            // The document was loaded with the share of a full set of workers; fewer workers get larger shares
+            if (workerCount >= 1 && workerCount < pdfParallelism && pdfMemoryBudget > 0) {
+                closePdf(document);
+                document = null;
+                StageTimer reloadTimer = StageTimer.start(report, "document load", -1);
+                document = loadPdf(file, workerCount);
+                reloadTimer.stop();
+            }
+            
+            if (workerCount <= 1) {
+                extractPageRange(document, nextPage, endPage, pages, report);
+                return Arrays.asList(pages).subList(firstPage, endPage);
+            }
+            
+            // Each extra worker owns its own document; the calling thread works on the one already loaded
+            ExecutorService executor = Executors.newFixedThreadPool(workerCount - 1);
+            try {
+                List<Future<Void>> workers = new ArrayList<>();
+                for (int i = 1; i < workerCount; i++) {
+                    workers.add(executor.submit(() -> {
+                        StageTimer workerLoadTimer = StageTimer.start(report, "document load", -1);
+                        PDDocument workerDocument = loadPdf(file, workerCount);
+                        workerLoadTimer.stop();
+                        try {
+                            extractPageRange(workerDocument, nextPage, endPage, pages, report);
+                        } finally {
+                            closePdf(workerDocument);
+                        }
+                        return null;
+                    }));
+                }
+                
+                extractPageRange(document, nextPage, endPage, pages, report);
+                
+                for (Future<Void> worker : workers) {
+                    worker.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("PDF extraction was interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Error extracting PDF page: " + cause.getMessage(), cause);
+            } finally {
+                executor.shutdownNow();
+            }
+            
+            return Arrays.asList(pages).subList(firstPage, endPage);
+        } finally {
+            if (document != null) {
+                closePdf(document);
+            }
+        }
+    }
+    
+    /**
+     * Extract pages until no page is left, taking the next page index from a shared counter
+     * @param document PDF document owned by the calling thread
+     * @param nextPage Counter of the next page to extract
+     * @param endPage Index after the last page to extract
+     * @param pages Receives the result of each extracted page
+     * @param report Report receiving the stage timings
+     */
+    private void extractPageRange(PDDocument document, AtomicInteger nextPage, int endPage, PageExtraction[] pages,
+                                  ConversionReport report) throws IOException {
+        PageLayoutStripper layoutStripper = new PageLayoutStripper();
+        int pageIndex;
+        while ((pageIndex = nextPage.getAndIncrement()) < endPage) {
+            pages[pageIndex] = extractPage(layoutStripper, document, pageIndex, report);
+        }
+    }
+    
+    /**
+     * Extract the table of a single page
+     * @param layoutStripper Stripper used to read the page layout
      * @param document PDF document
      * @param pageIndex Index of the page to process
-     * @param pageName Name of the page for table naming
-     * @return TableData object with extracted data
+     * @param report Report receiving the stage timings
+     * @return Extraction result of the page
      */
-    private TableData extractTableByRegions(PDDocument document, int pageIndex, String pageName) throws IOException {
-        TableData tableData = new TableData("Table from " + pageName);
+    PageExtraction extractPage(PageLayoutStripper layoutStripper, PDDocument document, int pageIndex,
+                               ConversionReport report) throws IOException {
+        String pageName = "Page " + (pageIndex + 1);
         
-        // Initialize text stripper for region extraction
-        PDFTextStripperByArea stripper = new PDFTextStripperByArea();
-        stripper.setSortByPosition(true);
+        // Parse the page once; all extraction steps below read from this layout
+        StageTimer layoutTimer = StageTimer.start(report, "page layout", pageIndex);
+        PageLayout layout = layoutStripper.readPage(document, pageIndex);
+        layoutTimer.stop();
         
-        // Get page dimensions
-        org.apache.pdfbox.pdmodel.PDPage page = document.getPage(pageIndex);
-        float pageWidth = page.getMediaBox().getWidth();
-        float pageHeight = page.getMediaBox().getHeight();
+        // Blank pages and pages of plain prose skip the table extractors
+        StageTimer classifyTimer = StageTimer.start(report, "page classification", pageIndex);
+        PageClassifier.PageKind pageKind = new PageClassifier().classify(layout);
+        classifyTimer.stop();
+        if (pageKind == PageClassifier.PageKind.BLANK) {
+            return new PageExtraction(pageIndex, null, layout.getText());
+        }
+        
+        // The classifier reads only the text, so a small bordered table with narrow gaps scores as prose;
+        // its rulings are evidence enough
+        if (pageKind == PageClassifier.PageKind.TEXT) {
+            PageExtraction tableFromRulings = extractTableByRulings(document, layout, pageName, report);
+            if (tableFromRulings != null && tableFromRulings.getTable().getRowCount() > 0) {
+                return tableFromRulings;
+            }
+            return new PageExtraction(pageIndex, null, layout.getText(), true);
+        }
+        
+        // The fast tiers split the text lines at wide gaps; auto keeps the result only if its rows are consistent
+        ExtractionTier tier = extractionTier;
+        if (tier != ExtractionTier.ACCURATE) {
+            StageTimer fastTimer = StageTimer.start(report, "text columns", pageIndex);
+            TextColumnExtractor textColumnExtractor = new TextColumnExtractor(layout);
+            PageExtraction tableFromTextColumns = textColumnExtractor.extract(pageName);
+            fastTimer.stop();
+            if (tier == ExtractionTier.FAST) {
+                return tableFromTextColumns != null ? tableFromTextColumns : new PageExtraction(pageIndex, null, layout.getText());
+            }
+            if (tableFromTextColumns != null && textColumnExtractor.isConsistent()) {
+                return tableFromTextColumns;
+            }
+            report.incrementCounter("auto escalation");
+        }
+        
+        // Pages that draw their cell borders give the grid directly
+        PageExtraction tableFromRulings = extractTableByRulings(document, layout, pageName, report);
+        if (tableFromRulings != null && tableFromRulings.getTable().getRowCount() > 0) {
+            return tableFromRulings;
+        }
+        
+        // Try to extract text using the improved region-based method
+        PageExtraction tableFromRegions = extractTableByRegions(layout, pageName, report);
+        if (tableFromRegions != null && tableFromRegions.getTable().getRowCount() > 0) {
+            return tableFromRegions;
+        }
+        
+        // If region-based extraction failed, fall back to text-based extraction
+        String pageText = layout.getText();
+        
+        // Print extracted text to console
+        if (debug) {
+            System.out.println("------- Extracted Text from " + pageName + " -------");
+            System.out.println(pageText);
+            System.out.println("-------------------------------------------");
+        }
+        
+        // Try to process the page as a table using text-based analysis
+        StageTimer textTimer = StageTimer.start(report, "text fallback", pageIndex);
+        TableData pageTable = extractTableFromPage(pageText, pageName);
+        textTimer.stop();
+        
+        // Attempt to detect tables using regex patterns if no column structure was found
+        if (pageTable == null) {
+            StageTimer regexTimer = StageTimer.start(report, "regex fallback", pageIndex);
+            pageTable = attemptRegexTableDetection(pageText, pageName);
+            regexTimer.stop();
+        }
+        
+        // Only keep the table if it has content
+        if (pageTable != null && pageTable.getRowCount() == 0) {
+            pageTable = null;
+        }
+        return new PageExtraction(pageIndex, pageTable, pageText);
+    }
+    
+    /**
+     * Extract table using a region-based approach for better structure preservation
+     * @param layout Layout of the page to process
+     * @param pageName Name of the page for table naming
+     * @param report Report receiving the stage timings
+     * @return Extraction result with the table and its column boundaries, or null if no grid was found
+     */
+    private PageExtraction extractTableByRegions(PageLayout layout, String pageName,
+                                            ConversionReport report) throws IOException {
+        TableData.Builder tableData = TableData.builder("Table from " + pageName);
         
         // Step 1: Analyze the page to detect potential table structure
-        List<Float> horizontalLines = detectHorizontalLines(document, pageIndex);
-        List<Float> verticalLines = detectVerticalLines(document, pageIndex);
+        StageTimer lineTimer = StageTimer.start(report, "line detection", layout.getPageIndex());
+        float[] horizontalLines = detectHorizontalLines(layout);
+        float[] verticalLines = detectVerticalLines(layout);
+        lineTimer.stop();
         
         // If we couldn't detect proper lines, return null to fall back to text-based method
-        if (horizontalLines.size() < 2 || verticalLines.size() < 2) {
+        if (horizontalLines.length < 2 || verticalLines.length < 2) {
             return null;
         }
         
         // Step 2: Create a grid of regions based on the detected lines
-        List<List<String>> grid = extractTextFromGrid(document, pageIndex, horizontalLines, verticalLines);
+        StageTimer gridTimer = StageTimer.start(report, "grid extraction", layout.getPageIndex());
+        List<List<String>> grid = extractTextFromGrid(layout, horizontalLines, verticalLines);
+        
+        // Step 3: Process grid to create table data
+        addGridToTable(tableData, grid);
+        gridTimer.stop();
+        
+        return new PageExtraction(layout.getPageIndex(), tableData.build(), layout.getText(), false,
+                verticalLines, grid.isEmpty() ? null : grid.get(0));
+    }
+    
+    /**
+     * Extract table using the ruling lines drawn on the page as cell borders
+     * @param document PDF document
+     * @param layout Layout of the page to process
+     * @param pageName Name of the page for table naming
+     * @param report Report receiving the stage timings
+     * @return Extraction result with the table and its column boundaries, or null if the page has no ruling lines
+     */
+    private PageExtraction extractTableByRulings(PDDocument document, PageLayout layout, String pageName,
+                                            ConversionReport report) throws IOException {
+        PDPage page = document.getPage(layout.getPageIndex());
+        
+        // Rulings of rotated pages do not line up with the text coordinates
+        if (page.getRotation() != 0) {
+            return null;
+        }
+        
+        // Step 1: Read the line and rectangle drawing operators of the page
+        StageTimer rulingTimer = StageTimer.start(report, "ruling detection", layout.getPageIndex());
+        RulingLineDetector detector = new RulingLineDetector(page);
+        detector.detect();
+        float[] horizontalLines = detector.getHorizontalRulings();
+        float[] verticalLines = detector.getVerticalRulings();
+        rulingTimer.stop();
+        
+        // Without rulings in both directions the text heuristics have to guess the grid
+        if (horizontalLines.length < 2 || verticalLines.length < 2) {
+            return null;
+        }
+        
+        // Step 2: Extract the cells; rulings are ascending from the bottom, so the top row comes last
+        StageTimer gridTimer = StageTimer.start(report, "grid extraction", layout.getPageIndex());
+        List<List<String>> grid = extractTextFromGrid(layout, horizontalLines, verticalLines);
+        Collections.reverse(grid);
+        
+        // A page frame or a rule under a title is not a table; the text heuristics find its columns
+        if (!isTableGrid(grid)) {
+            gridTimer.stop();
+            return null;
+        }
         
         // Step 3: Process grid to create table data
+        TableData.Builder tableData = TableData.builder("Table from " + pageName);
+        addGridToTable(tableData, grid);
+        gridTimer.stop();
+        
+        return new PageExtraction(layout.getPageIndex(), tableData.build(), layout.getText(), false,
+                verticalLines, grid.isEmpty() ? null : grid.get(0));
+    }
+    
+    /**
+     * Check that the rulings of a page enclose a table rather than decorate the page
+     * @param grid Cells of the non-empty rows between the rulings
+     * @return true if the grid has at least two rows and two columns and text in more than one cell
+     */
+    private boolean isTableGrid(List<List<String>> grid) {
+        if (grid.size() < 2 || grid.get(0).size() < 2) {
+            return false;
+        }
+        int filledCells = 0;
+        for (List<String> row : grid) {
+            for (String cell : row) {
+                if (!cell.trim().isEmpty() && ++filledCells > 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Add a grid of cells to a table, using the first row as headers
+     * @param tableData Builder of the table to add to
+     * @param grid 2D grid of extracted text
+     */
+    private void addGridToTable(TableData.Builder tableData, List<List<String>> grid) {
         if (!grid.isEmpty()) {
             // Use first row as headers
             List<String> headerRow = grid.get(0);
@@ -172,195 +907,107 @@ public class FileController {
                 tableData.addRow(grid.get(i));
             }
         }
-        
-        return tableData;
     }
     
     /**
      * Detect horizontal lines that might represent row boundaries
-     * @param document PDF document
-     * @param pageIndex Index of the page to analyze
-     * @return List of y-coordinates of potential row boundaries
+     * @param layout Layout of the page to analyze
+     * @return Y-coordinates of potential row boundaries
      */
-    private List<Float> detectHorizontalLines(PDDocument document, int pageIndex) throws IOException {
-        List<Float> horizontalPositions = new ArrayList<>();
-        
+    float[] detectHorizontalLines(PageLayout layout) {
         // Get page dimensions
-        org.apache.pdfbox.pdmodel.PDPage page = document.getPage(pageIndex);
-        float pageHeight = page.getMediaBox().getHeight();
-        
-        // Extract text with position information to identify text lines
-        PDFTextStripper stripper = new PDFTextStripper() {
-            @Override
-            protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
-                for (TextPosition position : textPositions) {
-                    float y = pageHeight - position.getY();
-                    // Add to positions if not already close to an existing position
-                    boolean isNew = true;
-                    for (Float existingY : horizontalPositions) {
-                        if (Math.abs(existingY - y) < 5) {
-                            isNew = false;
-                            break;
-                        }
-                    }
-                    if (isNew) {
-                        horizontalPositions.add(y);
-                    }
-                }
-            }
-        };
+        float pageHeight = layout.getPageHeight();
         
-        stripper.setStartPage(pageIndex + 1);
-        stripper.setEndPage(pageIndex + 1);
-        stripper.setSortByPosition(true);
-        stripper.getText(document);
+        // Cluster the y-coordinates of the text positions to identify text lines
+        CoordinateClusterer clusterer = new CoordinateClusterer(5);
+        List<TextPosition> positions = layout.getTextPositions();
+        for (int i = 0; i < positions.size(); i++) {
+            clusterer.add(pageHeight - positions.get(i).getY());
+        }
         
-        // Sort positions to get them in order from top to bottom
-        horizontalPositions.sort((a, b) -> Float.compare(a, b));
+        // Positions come out sorted from top to bottom
+        float[] horizontalPositions = clusterer.toArray();
+        if (horizontalPositions.length == 0) {
+            return horizontalPositions;
+        }
         
         // Filter positions to get more distinct rows (remove positions that are too close)
-        List<Float> filteredPositions = new ArrayList<>();
-        if (!horizontalPositions.isEmpty()) {
-            filteredPositions.add(0f); // Add top of page
-            filteredPositions.add(horizontalPositions.get(0));
-            
-            for (int i = 1; i < horizontalPositions.size(); i++) {
-                float current = horizontalPositions.get(i);
-                float previous = horizontalPositions.get(i - 1);
-                
-                if (current - previous > 10) { // Minimum gap between rows
-                    filteredPositions.add(current);
-                }
-            }
+        float[] filteredPositions = new float[horizontalPositions.length + 2];
+        int count = 0;
+        filteredPositions[count++] = 0f; // Add top of page
+        filteredPositions[count++] = horizontalPositions[0];
+        
+        for (int i = 1; i < horizontalPositions.length; i++) {
+            float current = horizontalPositions[i];
+            float previous = horizontalPositions[i - 1];
             
-            filteredPositions.add(pageHeight); // Add bottom of page
+            if (current - previous > 10) { // Minimum gap between rows
+                filteredPositions[count++] = current;
+            }
         }
         
-        return filteredPositions;
+        filteredPositions[count++] = pageHeight; // Add bottom of page
+        
+        return Arrays.copyOf(filteredPositions, count);
     }
     
     /**
      * Detect vertical lines that might represent column boundaries
-     * @param document PDF document
-     * @param pageIndex Index of the page to analyze
-     * @return List of x-coordinates of potential column boundaries
-     */
-    private List<Float> detectVerticalLines(PDDocument document, int pageIndex) throws IOException {
-        List<Float> verticalPositions = new ArrayList<>();
-        
-        // Extract text with position information to identify columns
-        PDFTextStripper stripper = new PDFTextStripper() {
-            @Override
-            protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
-                for (TextPosition position : textPositions) {
-                    float x = position.getX();
-                    // Add position at start of text segment
-                    boolean startIsNew = true;
-                    for (Float existingX : verticalPositions) {
-                        if (Math.abs(existingX - x) < 10) {
-                            startIsNew = false;
-                            break;
-                        }
-                    }
-                    if (startIsNew) {
-                        verticalPositions.add(x);
-                    }
-                    
-                    // Add position at end of text segment
-                    float endX = x + position.getWidth();
-                    boolean endIsNew = true;
-                    for (Float existingX : verticalPositions) {
-                        if (Math.abs(existingX - endX) < 10) {
-                            endIsNew = false;
-                            break;
-                        }
-                    }
-                    if (endIsNew) {
-                        verticalPositions.add(endX);
-                    }
-                }
-            }
-        };
-        
-        stripper.setStartPage(pageIndex + 1);
-        stripper.setEndPage(pageIndex + 1);
-        stripper.setSortByPosition(true);
-        stripper.getText(document);
+     * @param layout Layout of the page to analyze
+     * @return X-coordinates of potential column boundaries
+     */
+    float[] detectVerticalLines(PageLayout layout) {
+        // Cluster the start and end x-coordinates of the text positions to identify columns
+        CoordinateClusterer clusterer = new CoordinateClusterer(10);
+        List<TextPosition> positions = layout.getTextPositions();
+        for (int i = 0; i < positions.size(); i++) {
+            TextPosition position = positions.get(i);
+            float x = position.getX();
+            clusterer.add(x); // Position at start of text segment
+            clusterer.add(x + position.getWidth()); // Position at end of text segment
+        }
         
-        // Sort positions to get them in order from left to right
-        verticalPositions.sort((a, b) -> Float.compare(a, b));
+        // Positions come out sorted from left to right
+        float[] verticalPositions = clusterer.toArray();
+        if (verticalPositions.length == 0) {
+            return verticalPositions;
+        }
         
         // Filter positions to get more distinct columns
-        List<Float> filteredPositions = new ArrayList<>();
-        if (!verticalPositions.isEmpty()) {
-            filteredPositions.add(0f); // Add left edge of page
-            
-            for (int i = 0; i < verticalPositions.size(); i++) {
-                float current = verticalPositions.get(i);
-                
-                // Check if this position is significantly different from the last one added
-                if (filteredPositions.isEmpty() || 
-                    current - filteredPositions.get(filteredPositions.size() - 1) > 20) {
-                    filteredPositions.add(current);
-                }
+        float[] filteredPositions = new float[verticalPositions.length + 2];
+        int count = 0;
+        filteredPositions[count++] = 0f; // Add left edge of page
+        
+        for (float current : verticalPositions) {
+            // Check if this position is significantly different from the last one added
+            if (current - filteredPositions[count - 1] > 20) {
+                filteredPositions[count++] = current;
             }
-            
-            // Add right edge of page
-            org.apache.pdfbox.pdmodel.PDPage page = document.getPage(pageIndex);
-            filteredPositions.add(page.getMediaBox().getWidth());
         }
         
-        return filteredPositions;
+        // Add right edge of page
+        filteredPositions[count++] = layout.getPageWidth();
+        
+        return Arrays.copyOf(filteredPositions, count);
     }
     
     /**
      * Extract text from grid cells created by intersection of horizontal and vertical lines
-     * @param document PDF document
-     * @param pageIndex Index of the page to process
+     * @param layout Layout of the page to process
      * @param horizontalLines Y-coordinates of horizontal lines
      * @param verticalLines X-coordinates of vertical lines
      * @return 2D grid of extracted text
      */
-    private List<List<String>> extractTextFromGrid(PDDocument document, int pageIndex, 
-                                                 List<Float> horizontalLines, 
-                                                 List<Float> verticalLines) throws IOException {
+    private List<List<String>> extractTextFromGrid(PageLayout layout, 
+                                                 float[] horizontalLines, 
+                                                 float[] verticalLines) throws IOException {
         List<List<String>> grid = new ArrayList<>();
-        PDFTextStripperByArea stripper = new PDFTextStripperByArea();
-        stripper.setSortByPosition(true);
         
-        org.apache.pdfbox.pdmodel.PDPage page = document.getPage(pageIndex);
-        float pageHeight = page.getMediaBox().getHeight();
+        // Bucket all glyphs of the page into their cells in a single sweep
+        GridTextStripper stripper = new GridTextStripper();
+        List<List<String>> cells = stripper.extractGrid(layout, horizontalLines, verticalLines);
         
-        // Process each row
-        for (int row = 0; row < horizontalLines.size() - 1; row++) {
-            float yTop = pageHeight - horizontalLines.get(row + 1);
-            float yBottom = pageHeight - horizontalLines.get(row);
-            float height = Math.abs(yBottom - yTop);
-            
-            List<String> rowData = new ArrayList<>();
-            
-            // Process each column in the current row
-            for (int col = 0; col < verticalLines.size() - 1; col++) {
-                float xLeft = verticalLines.get(col);
-                float width = verticalLines.get(col + 1) - xLeft;
-                
-                // Region name unique to this cell
-                String regionName = "cell_" + row + "_" + col;
-                
-                // Define rectangle for this cell
-                Rectangle rect = new Rectangle((int)xLeft, (int)yTop, (int)width, (int)height);
-                stripper.addRegion(regionName, rect);
-                
-                // Extract text from this cell
-                stripper.extractRegions(page);
-                String cellText = stripper.getTextForRegion(regionName);
-                
-                rowData.add(cellText.trim());
-                
-                // Clear the region for the next cell
-                stripper.removeRegion(regionName);
-            }
-            
+        for (List<String> rowData : cells) {
             // Only add non-empty rows
             boolean hasContent = false;
             for (String cell : rowData) {
@@ -382,14 +1029,11 @@ public class FileController {
      * Extract table data from a PDF page text
      * @param pageText Text extracted from a PDF page
      * @param pageName Name of the page (for table naming)
-     * @return TableData object with extracted data or null if no table found
+     * @return TableData object with extracted data or null if no column structure was found
      */
     private TableData extractTableFromPage(String pageText, String pageName) {
         // Create a new table data object
-        TableData tableData = new TableData("Table from " + pageName);
-        
-        // Split the text into lines
-        String[] lines = pageText.split("\\r?\\n");
+        TableData.Builder tableData = TableData.builder("Table from " + pageName);
         
         // Variables to track table detection
         boolean inTable = false;
@@ -398,71 +1042,42 @@ public class FileController {
         List<String[]> potentialRows = new ArrayList<>();
         
         // Analyze lines to find potential tables
-        for (String line : lines) {
-            // Skip empty lines
-            if (line.trim().isEmpty()) {
+        ColumnTokenizer tokenizer = new ColumnTokenizer();
+        int lineStart = 0;
+        while (lineStart < pageText.length()) {
+            int lineBreak = ColumnTokenizer.lineBreak(pageText, lineStart);
+            int lineEnd = ColumnTokenizer.lineEnd(pageText, lineStart, lineBreak);
+            int start = lineStart;
+            lineStart = lineBreak + 1;
+            
+            // Look for lines with consistent delimiters (tab, multiple spaces or pipe) that might indicate table cells.
+            // Empty lines, lines without delimiters and lines with less than 2 non-empty columns are skipped
+            int columnCount = tokenizer.tokenize(pageText, start, lineEnd);
+            if (columnCount < 2) {
                 continue;
             }
             
-            // Look for lines with consistent delimiters that might indicate table cells
-            String[] columns = null;
-            
-            // Try tab delimiter
-            if (line.contains("\t")) {
-                columns = line.split("\\t");
-            } 
-            // Try multiple spaces (common in PDFs)
-            else if (line.contains("  ")) {
-                columns = line.split("\\s{2,}");
+            // If this is the first row with columns, set it as the expected column count
+            if (consistentColumnCount == -1) {
+                consistentColumnCount = columnCount;
+                potentialRows.add(tokenizer.toArray());
+                inTable = true;
             }
-            // Try pipe delimiter
-            else if (line.contains("|")) {
-                columns = line.split("\\|");
-                // Clean up the split result
-                for (int i = 0; i < columns.length; i++) {
-                    columns[i] = columns[i].trim();
-                }
+            // If column count matches previous rows, it's likely part of the same table
+            else if (Math.abs(columnCount - consistentColumnCount) <= 1) {  // Allow for small variations
+                potentialRows.add(tokenizer.toArray());
             }
-            
-            // If potential columns were found
-            if (columns != null && columns.length > 1) {
-                // Clean empty entries
-                List<String> cleanColumns = new ArrayList<>();
-                for (String col : columns) {
-                    if (!col.trim().isEmpty()) {
-                        cleanColumns.add(col.trim());
-                    }
-                }
-                
-                // Skip if not enough columns after cleaning
-                if (cleanColumns.size() < 2) {
-                    continue;
-                }
-                
-                columns = cleanColumns.toArray(new String[0]);
-                
-                // If this is the first row with columns, set it as the expected column count
-                if (consistentColumnCount == -1) {
-                    consistentColumnCount = columns.length;
-                    potentialRows.add(columns);
-                    inTable = true;
-                }
-                // If column count matches previous rows, it's likely part of the same table
-                else if (Math.abs(columns.length - consistentColumnCount) <= 1) {  // Allow for small variations
-                    potentialRows.add(columns);
+            // If column count is very different, we might have ended the table
+            else if (Math.abs(columnCount - consistentColumnCount) > 2) {
+                // If we already have some rows, assume we're done with this table
+                if (potentialRows.size() > 1) {
+                    break;
                 }
-                // If column count is very different, we might have ended the table
-                else if (Math.abs(columns.length - consistentColumnCount) > 2) {
-                    // If we already have some rows, assume we're done with this table
-                    if (potentialRows.size() > 1) {
-                        break;
-                    }
-                    // Otherwise, this might be a better start for a table
-                    else {
-                        consistentColumnCount = columns.length;
-                        potentialRows.clear();
-                        potentialRows.add(columns);
-                    }
+                // Otherwise, this might be a better start for a table
+                else {
+                    consistentColumnCount = columnCount;
+                    potentialRows.clear();
+                    potentialRows.add(tokenizer.toArray());
                 }
             }
         }
@@ -492,12 +1107,11 @@ public class FileController {
                 tableData.addRow(row);
             }
             
-            return tableData;
+            return tableData.build();
         }
         
-        // If we couldn't detect a table structure, but the text might contain table-like data
-        // Attempt to detect tables using regex patterns
-        return attemptRegexTableDetection(pageText, pageName);
+        // No table structure found, the caller tries the regex patterns next
+        return null;
     }
     
     /**
@@ -507,49 +1121,51 @@ public class FileController {
      * @return TableData if a table is detected, null otherwise
      */
     private TableData attemptRegexTableDetection(String text, String pageName) {
-        // Look for patterns common in course schedules
-        Pattern timePattern = Pattern.compile("(\\d{1,2}:\\d{2})\\s*-\\s*(\\d{1,2}:\\d{2})");
-        Matcher timeMatcher = timePattern.matcher(text);
-        
-        if (timeMatcher.find()) {
-            // Time slots found, might be a schedule
-            TableData scheduleTable = new TableData("Schedule from " + pageName);
-            
-            // Add common headers for a course schedule
-            scheduleTable.addHeader("Time");
-            scheduleTable.addHeader("Monday");
-            scheduleTable.addHeader("Tuesday");
-            scheduleTable.addHeader("Wednesday");
-            scheduleTable.addHeader("Thursday");
-            scheduleTable.addHeader("Friday");
-            
-            // Extract lines with time patterns
-            String[] lines = text.split("\\r?\\n");
-            for (String line : lines) {
-                Matcher lineMatcher = timePattern.matcher(line);
-                if (lineMatcher.find()) {
-                    // This line contains a time slot
-                    String timeSlot = lineMatcher.group(0);  // The full time range
-                    
-                    // Try to extract course information
-                    List<String> row = new ArrayList<>();
-                    row.add(timeSlot);
-                    
-                    // Add empty placeholders for days
-                    for (int i = 0; i < 5; i++) {
-                        row.add("");
-                    }
-                    
-                    scheduleTable.addRow(row);
-                }
+        // Look for time slots, common in course schedules
+        TableData.Builder scheduleTable = null;
+        
+        // Extract lines with time patterns in a single pass over the text
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineBreak = ColumnTokenizer.lineBreak(text, lineStart);
+            int lineEnd = ColumnTokenizer.lineEnd(text, lineStart, lineBreak);
+            int timeStart = ColumnTokenizer.findTimeRange(text, lineStart, lineEnd);
+            lineStart = lineBreak + 1;
+            
+            if (timeStart < 0) {
+                continue;
             }
             
-            if (!scheduleTable.getRows().isEmpty()) {
-                return scheduleTable;
+            if (scheduleTable == null) {
+                // Time slots found, might be a schedule
+                scheduleTable = TableData.builder("Schedule from " + pageName);
+                
+                // Add common headers for a course schedule
+                scheduleTable.addHeader("Time");
+                scheduleTable.addHeader("Monday");
+                scheduleTable.addHeader("Tuesday");
+                scheduleTable.addHeader("Wednesday");
+                scheduleTable.addHeader("Thursday");
+                scheduleTable.addHeader("Friday");
             }
+            
+            // This line contains a time slot
+            int timeEnd = ColumnTokenizer.matchTimeRange(text, timeStart, lineEnd);
+            String timeSlot = text.substring(timeStart, timeEnd);  // The full time range
+            
+            // Try to extract course information
+            List<String> row = new ArrayList<>();
+            row.add(timeSlot);
+            
+            // Add empty placeholders for days
+            for (int i = 0; i < 5; i++) {
+                row.add("");
+            }
+            
+            scheduleTable.addRow(row);
         }
         
-        return null;
+        return scheduleTable != null ? scheduleTable.build() : null;
     }
     
     /**
@@ -558,22 +1174,130 @@ public class FileController {
      * @return List of extracted table data
      */
     public List<TableData> processExcelFile(File file) {
+        return processExcelFile(file, ExtractionRequest.ALL);
+    }
+    
+    /**
+     * Process part of an Excel file
+     * @param file Excel file
+     * @param request Sheets, columns and rows to extract
+     * @return List of extracted table data
+     */
+    public List<TableData> processExcelFile(File file, ExtractionRequest request) {
+        return convertExcelFile(file, request).getTables();
+    }
+    
+    /**
+     * Convert part of an Excel file. Sheets outside the requested range are not read, and
+     * once the headers of a sheet are known only the cells of the requested columns and of
+     * the filtered column are converted. Results of partial requests are not cached.
+     * Conversions may run on several threads at once; the controller keeps nothing of a
+     * conversion after it returns.
+     * @param file Excel file
+     * @param request Sheets, columns and rows to extract
+     * @return Tables and stage timings of this conversion
+     */
+    public ConversionResult convertExcelFile(File file, ExtractionRequest request) {
+        ConversionReport report = startReport(file);
+        
         // Validate file before processing
         if (!FileValidator.isValidExcelFile(file)) {
             System.err.println("Invalid Excel file: " + file.getName());
-            return tableDataList;
+            return new ConversionResult(file.getName(), Collections.emptyList(), report, false, false);
+        }
+        
+        // Reuse the tables of a file that was converted before
+        StageTimer cacheTimer = StageTimer.start(report, "cache lookup", -1);
+        String cacheKey = request.isAll()
+                ? cacheKey(file, "excel" + (fillMergedCells ? "/merged" : "") + (evaluateFormulas ? "/evaluated" : ""))
+                : null;
+        List<TableData> cachedTables = getCachedTables(cacheKey);
+        cacheTimer.stop();
+        if (cachedTables != null) {
+            finishReport(report);
+            return new ConversionResult(file.getName(), cachedTables, report, true);
+        }
+        
+        List<TableData> fileTables;
+        boolean successful = true;
+        try {
+            // Workbooks are streamed unless streaming is turned off, formulas are evaluated or the format is not known
+            FileMagic fileMagic = FileMagic.valueOf(file);
+            if (excelStreaming && !evaluateFormulas && fileMagic == FileMagic.OOXML) {
+                fileTables = new StreamingXlsxReader(file, excelParallelism, fillMergedCells, request, debug).readSheets(report);
+            } else if (excelStreaming && !evaluateFormulas && fileMagic == FileMagic.OLE2) {
+                fileTables = new StreamingXlsReader(file, fillMergedCells, request, debug).readSheets(report);
+            } else {
+                fileTables = readExcelWorkbook(file, request, report);
+            }
+            
+            // If no tables were found, create a simple info table
+            if (fileTables.isEmpty()) {
+                TableData.Builder infoTable = TableData.builder("Info - " + file.getName());
+                infoTable.addHeader("Message");
+                List<String> infoRow = new ArrayList<>();
+                infoRow.add("Excel file contains no data or could not be processed.");
+                infoTable.addRow(infoRow);
+                fileTables.add(infoTable.build());
+            }
+            
+            if (cacheKey != null) {
+                StageTimer storeTimer = StageTimer.start(report, "cache store", -1);
+                resultCache.put(cacheKey, fileTables);
+                storeTimer.stop();
+            }
+            
+        } catch (IOException e) {
+            successful = false;
+            System.err.println("Error processing Excel file: " + e.getMessage());
+            e.printStackTrace();
+            
+            // If there's an error, create a simple table with error information
+            fileTables = Collections.singletonList(createErrorTable("Error processing Excel file: " + e.getMessage(), 
+                    "Error", file.getName()));
         }
         
+        finishReport(report);
+        return new ConversionResult(file.getName(), fileTables, report, false, successful);
+    }
+    
+    /**
+     * Read the requested sheets of an Excel workbook through the workbook object model
+     * @param file Excel file
+     * @param request Sheets, columns and rows to extract
+     * @param report Report receiving the stage timings
+     * @return Table of every sheet with data rows, in workbook order
+     */
+    private List<TableData> readExcelWorkbook(File file, ExtractionRequest request, ConversionReport report)
+            throws IOException {
         // Use try-with-resources to ensure proper closing of resources
+        StageTimer loadTimer = StageTimer.start(report, "workbook load", -1);
         try (FileInputStream inputStream = new FileInputStream(file);
              Workbook workbook = WorkbookFactory.create(inputStream)) {
+            loadTimer.stop();
+            
+            List<TableData> fileTables = new ArrayList<>();
             
             // Get the number of sheets
             int numberOfSheets = workbook.getNumberOfSheets();
-            System.out.println("Excel workbook loaded. Number of sheets: " + numberOfSheets);
+            if (debug) {
+                System.out.println("Excel workbook loaded. Number of sheets: " + numberOfSheets);
+            }
+            
+            // Cell conversion decisions and formula results are shared by all sheets of the workbook
+            boolean date1904 = workbook instanceof Date1904Support && ((Date1904Support) workbook).isDate1904();
+            FormulaEvaluator formulaEvaluator = null;
+            if (evaluateFormulas) {
+                formulaEvaluator = workbook.getCreationHelper().createFormulaEvaluator();
+                formulaEvaluator.setIgnoreMissingWorkbooks(true);
+            }
+            CellValueConverter converter = new CellValueConverter(date1904, null, formulaEvaluator);
             
             // Process each sheet in the workbook
             for (int i = 0; i < numberOfSheets; i++) {
+                if (!request.includesSheet(i)) {
+                    continue;
+                }
                 Sheet sheet = workbook.getSheetAt(i);
                 
                 // Get sheet name or use default if blank
@@ -584,37 +1308,16 @@ public class FileController {
                 
                 // Process the sheet if it has content
                 if (sheet.getPhysicalNumberOfRows() > 0) {
-                    TableData sheetData = processExcelSheet(sheet, sheetName, file.getName());
-                    if (sheetData != null && !sheetData.getRows().isEmpty()) {
-                        tableDataList.add(sheetData);
+                    StageTimer sheetTimer = StageTimer.start(report, "excel sheet", i, sheetName);
+                    TableData sheetData = processExcelSheet(sheet, sheetName, file.getName(), converter, request);
+                    sheetTimer.stop();
+                    if (sheetData != null && sheetData.getRowCount() > 0) {
+                        fileTables.add(sheetData);
                     }
                 }
             }
-            
-            // If no tables were found, create a simple info table
-            if (tableDataList.isEmpty()) {
-                TableData infoTable = new TableData("Info - " + file.getName());
-                infoTable.addHeader("Message");
-                List<String> infoRow = new ArrayList<>();
-                infoRow.add("Excel file contains no data or could not be processed.");
-                infoTable.addRow(infoRow);
-                tableDataList.add(infoTable);
-            }
-            
-        } catch (IOException e) {
-            System.err.println("Error processing Excel file: " + e.getMessage());
-            e.printStackTrace();
-            
-            // If there's an error, create a simple table with error information
-            TableData errorTable = new TableData("Error - " + file.getName());
-            errorTable.addHeader("Error");
-            List<String> errorRow = new ArrayList<>();
-            errorRow.add("Error processing Excel file: " + e.getMessage());
-            errorTable.addRow(errorRow);
-            tableDataList.add(errorTable);
+            return fileTables;
         }
-        
-        return tableDataList;
     }
     
     /**
@@ -622,145 +1325,82 @@ public class FileController {
      * @param sheet Excel sheet to process
      * @param sheetName Name of the sheet
      * @param fileName Name of the parent file
+     * @param converter Converter of the cell values of the workbook
+     * @param request Columns and rows to extract
      * @return TableData object with extracted data
      */
-    private TableData processExcelSheet(Sheet sheet, String sheetName, String fileName) {
-        TableData tableData = new TableData("Excel - " + sheetName + " (" + fileName + ")");
-        
-        // Get iterator for all rows
-        Iterator<Row> rowIterator = sheet.iterator();
-        
-        // Check if sheet has rows
-        if (!rowIterator.hasNext()) {
-            return tableData; // Return empty table if no rows
-        }
-        
-        // Process header row (first row)
-        Row headerRow = rowIterator.next();
+    private TableData processExcelSheet(Sheet sheet, String sheetName, String fileName, CellValueConverter converter,
+                                        ExtractionRequest request) {
+        SheetTableBuilder builder = new SheetTableBuilder("Excel - " + sheetName + " (" + fileName + ")",
+                fillMergedCells, request);
         
-        // Initialize with empty header if the first row is empty
-        boolean hasHeaders = false;
-        for (Cell cell : headerRow) {
-            if (cell != null && cell.getCellType() != CellType.BLANK) {
-                hasHeaders = true;
-                break;
-            }
-        }
-        
-        // Process header cells
-        short minColIndex = headerRow.getFirstCellNum();
-        short maxColIndex = headerRow.getLastCellNum();
-        
-        if (minColIndex < 0) {
-            // No cells in header row, create default headers
-            tableData.addHeader("Column 1");
-            maxColIndex = 1; // Assume at least one column
-        } else {
-            // Process actual header cells
-            for (int i = minColIndex; i < maxColIndex; i++) {
-                Cell cell = headerRow.getCell(i);
-                String headerValue = (cell != null) ? getCellValueAsString(cell) : "Column " + (i + 1);
-                if (headerValue.trim().isEmpty()) {
-                    headerValue = "Column " + (i + 1);
+        // The first row gives the headers and the columns of the table, blank rows are skipped
+        for (Row row : sheet) {
+            builder.startRow(row.getRowNum());
+            for (Cell cell : row) {
+                if (builder.wantsCell(cell.getColumnIndex())) {
+                    builder.addCell(cell.getColumnIndex(), getCellValueAsString(cell, converter));
                 }
-                tableData.addHeader(headerValue);
             }
+            builder.endRow();
         }
         
-        // If not treating first row as header, use it as data too
-        if (!hasHeaders && headerRow.getPhysicalNumberOfCells() > 0) {
-            addRowToTable(tableData, headerRow, minColIndex, maxColIndex);
-        }
-        
-        // Process data rows
-        while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-            if (row.getPhysicalNumberOfCells() > 0) {
-                addRowToTable(tableData, row, minColIndex, maxColIndex);
-            }
-        }
-        
-        return tableData;
-    }
-    
-    /**
-     * Add a row of data from an Excel row to a TableData object
-     * @param tableData The TableData to add to
-     * @param row The Excel row
-     * @param minColIndex Minimum column index
-     * @param maxColIndex Maximum column index
-     */
-    private void addRowToTable(TableData tableData, Row row, short minColIndex, short maxColIndex) {
-        List<String> rowData = new ArrayList<>();
-        
-        // Process each cell in the row up to the maximum column index from header
-        for (int i = minColIndex; i < maxColIndex; i++) {
-            Cell cell = row.getCell(i);
-            String cellValue = (cell != null) ? getCellValueAsString(cell) : "";
-            rowData.add(cellValue);
-        }
-        
-        // Only add row if it has some non-empty cells
-        boolean hasData = false;
-        for (String value : rowData) {
-            if (!value.trim().isEmpty()) {
-                hasData = true;
-                break;
-            }
-        }
-        
-        if (hasData) {
-            tableData.addRow(rowData);
+        if (fillMergedCells) {
+            builder.fillMergedCells(new MergedRegionIndex(sheet.getMergedRegions()));
         }
+        return builder.getTable();
     }
     
     /**
      * Convert a cell value to string, handling various cell types properly
      * @param cell Cell to convert
+     * @param converter Converter of the cell values of the workbook
      * @return String representation of the cell value
      */
-    private String getCellValueAsString(Cell cell) {
+    private String getCellValueAsString(Cell cell, CellValueConverter converter) {
         if (cell == null) {
             return "";
         }
         
         switch (cell.getCellType()) {
             case STRING:
-                return cell.getStringCellValue();
+                return converter.intern(cell.getStringCellValue());
             case NUMERIC:
-                // Handle date cells
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-                    return dateFormat.format(cell.getDateCellValue());
-                }
-                // Handle numeric cells - use formatted string if available
-                double value = cell.getNumericCellValue();
-                if (value == Math.floor(value)) {
-                    // It's an integer value, remove decimal part
-                    return String.valueOf((int) value);
-                }
-                return String.valueOf(value);
+                // Dates and integral numbers are handled by the converter, which knows the date styles
+                return converter.numericValue(cell.getNumericCellValue(), converter.isDateStyle(cell.getCellStyle()));
             case BOOLEAN:
                 return String.valueOf(cell.getBooleanCellValue());
             case FORMULA:
+                // Use the evaluated result if the workbook is evaluated
+                CellValue evaluated = converter.evaluate(cell);
+                if (evaluated != null) {
+                    switch (evaluated.getCellType()) {
+                        case NUMERIC:
+                            return converter.numericValue(evaluated.getNumberValue(), converter.isDateStyle(cell.getCellStyle()));
+                        case STRING:
+                            return converter.intern(evaluated.getStringValue());
+                        case BOOLEAN:
+                            return String.valueOf(evaluated.getBooleanValue());
+                        case ERROR:
+                            return FormulaError.forInt(evaluated.getErrorValue()).getString();
+                        default:
+                            return cell.getCellFormula();
+                    }
+                }
+                
                 // Try to evaluate formula
                 try {
                     // First try to get cached formula result
                     CellType cachedType = cell.getCachedFormulaResultType();
                     if (cachedType == CellType.NUMERIC) {
-                        if (DateUtil.isCellDateFormatted(cell)) {
-                            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-                            return dateFormat.format(cell.getDateCellValue());
-                        }
-                        double numericValue = cell.getNumericCellValue();
-                        if (numericValue == Math.floor(numericValue)) {
-                            return String.valueOf((int) numericValue);
-                        }
-                        return String.valueOf(numericValue);
+                        return converter.numericValue(cell.getNumericCellValue(), converter.isDateStyle(cell.getCellStyle()));
                     } else if (cachedType == CellType.STRING) {
-                        return cell.getStringCellValue();
+                        return converter.intern(cell.getStringCellValue());
                     } else if (cachedType == CellType.BOOLEAN) {
                         return String.valueOf(cell.getBooleanCellValue());
+                    } else if (cachedType == CellType.ERROR) {
+                        // Error code such as #DIV/0!, as the streaming readers give it
+                        return FormulaError.forInt(cell.getErrorCellValue()).getString();
                     }
                     // Fallback to formula string
                     return cell.getCellFormula();
@@ -774,8 +1414,4 @@ public class FileController {
                 return "";
         }
     }
-    
-    public List<TableData> getTableDataList() {
-        return tableDataList;
-    }
-} 
\ No newline at end of file
+}
\ No newline at end of file
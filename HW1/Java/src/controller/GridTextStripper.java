@@ -0,0 +1,188 @@
+package controller;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import model.PageLayout;
+
+/**
+ * Extracts the text of every cell of a grid in a single sweep over the glyphs
+ * of a page. Each glyph is placed into its (row, col) cell with a binary search
+ * on the row and column boundaries, then each cell is written with the regular
+ * PDFTextStripper line and word logic. The cell rectangles are the same integer
+ * rectangles a PDFTextStripperByArea region per cell would use, so the text of
+ * each cell is identical to extracting the regions one by one.
+ * Instances are not thread-safe; use one per thread.
+ */
+public class GridTextStripper extends PDFTextStripper {
+
+    public GridTextStripper() throws IOException {
+        setSortByPosition(true);
+        setShouldSeparateByBeads(false);
+    }
+
+    /**
+     * Extract the text of all grid cells of a page
+     * @param layout Layout of the page
+     * @param horizontalLines Y-coordinates of horizontal lines, measured from the bottom of the page
+     * @param verticalLines X-coordinates of vertical lines
+     * @return Text of each cell, one list per row including empty rows
+     */
+    public List<List<String>> extractGrid(PageLayout layout, float[] horizontalLines,
+                                          float[] verticalLines) throws IOException {
+        float pageHeight = layout.getPageHeight();
+        int rowCount = Math.max(horizontalLines.length - 1, 0);
+        int colCount = Math.max(verticalLines.length - 1, 0);
+
+        // Integer cell bounds, computed exactly like the per-cell Rectangle regions
+        Axis rows = new Axis(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            float yTop = pageHeight - horizontalLines[row + 1];
+            float yBottom = pageHeight - horizontalLines[row];
+            float height = Math.abs(yBottom - yTop);
+            rows.set(row, (int) yTop, (int) height);
+        }
+        Axis cols = new Axis(colCount);
+        for (int col = 0; col < colCount; col++) {
+            float xLeft = verticalLines[col];
+            float width = verticalLines[col + 1] - xLeft;
+            cols.set(col, (int) xLeft, (int) width);
+        }
+        rows.index();
+        cols.index();
+
+        // Place every glyph into the cell that contains it
+        List<List<TextPosition>> cells = new ArrayList<>(Collections.nCopies(rowCount * colCount, null));
+        int[] rowHits = new int[rowCount];
+        int[] colHits = new int[colCount];
+        for (TextPosition glyph : layout.getGlyphs()) {
+            int rowHitCount = rows.find(glyph.getY(), rowHits);
+            if (rowHitCount == 0) {
+                continue;
+            }
+            int colHitCount = cols.find(glyph.getX(), colHits);
+            for (int i = 0; i < rowHitCount; i++) {
+                for (int j = 0; j < colHitCount; j++) {
+                    int cell = rowHits[i] * colCount + colHits[j];
+                    List<TextPosition> cellGlyphs = cells.get(cell);
+                    if (cellGlyphs == null) {
+                        cellGlyphs = new ArrayList<>();
+                        cells.set(cell, cellGlyphs);
+                    }
+                    cellGlyphs.add(glyph);
+                }
+            }
+        }
+
+        // Write the text of each cell
+        List<List<String>> grid = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            List<String> rowData = new ArrayList<>();
+            for (int col = 0; col < colCount; col++) {
+                List<TextPosition> cell = cells.get(row * colCount + col);
+                rowData.add(cell == null ? "" : writeCell(cell).trim());
+            }
+            grid.add(rowData);
+        }
+        return grid;
+    }
+
+    /**
+     * Write the glyphs of one cell as text
+     * @param glyphs Glyphs of the cell in content stream order
+     * @return Text of the cell
+     */
+    private String writeCell(List<TextPosition> glyphs) throws IOException {
+        charactersByArticle = new ArrayList<>();
+        charactersByArticle.add(glyphs);
+        StringWriter cellText = new StringWriter();
+        output = cellText;
+        writePage();
+        return cellText.toString();
+    }
+
+    /**
+     * Half-open integer intervals [start, start + length) along one axis
+     */
+    private static class Axis {
+        private final int[] starts;
+        private final int[] ends;
+        private int[] order;
+        private boolean disjoint;
+
+        Axis(int size) {
+            starts = new int[size];
+            ends = new int[size];
+        }
+
+        void set(int i, int start, int length) {
+            starts[i] = start;
+            ends[i] = start + length;
+        }
+
+        /**
+         * Sort the intervals by start and check whether a binary search can be used
+         */
+        void index() {
+            int size = starts.length;
+            Integer[] sorted = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, (a, b) -> Integer.compare(starts[a], starts[b]));
+            order = new int[size];
+            disjoint = true;
+            for (int i = 0; i < size; i++) {
+                order[i] = sorted[i];
+                if (i > 0 && starts[order[i]] < ends[order[i - 1]]) {
+                    disjoint = false;
+                }
+            }
+        }
+
+        /**
+         * Find the intervals containing a coordinate
+         * @param value Coordinate to look up
+         * @param hits Receives the indexes of the matching intervals
+         * @return Number of matching intervals
+         */
+        int find(float value, int[] hits) {
+            if (!disjoint) {
+                // Overlapping cells only happen on degenerate pages; check them all
+                int count = 0;
+                for (int i = 0; i < starts.length; i++) {
+                    if (value >= starts[i] && value < ends[i]) {
+                        hits[count++] = i;
+                    }
+                }
+                return count;
+            }
+
+            // Last interval whose start is not after the value
+            int low = 0;
+            int high = order.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[order[mid]] <= value) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (found >= 0 && value < ends[order[found]]) {
+                hits[0] = order[found];
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
@@ -30,10 +30,10 @@ public class HtmlController {
         
         // Generate table body
         html.append("  <tbody>\n");
-        for (List<String> row : tableData.getRows()) {
+        for (int row = 0; row < tableData.getRowCount(); row++) {
             html.append("    <tr>\n");
-            for (String cell : row) {
-                html.append("      <td>").append(cell).append("</td>\n");
+            for (int column = 0; column < tableData.getRowWidth(row); column++) {
+                html.append("      <td>").append(tableData.getValue(row, column)).append("</td>\n");
             }
             html.append("    </tr>\n");
         }
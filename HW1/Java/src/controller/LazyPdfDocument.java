@@ -0,0 +1,351 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+
+import model.ConversionReport;
+import model.TableData;
+import util.StageTimer;
+
+/**
+ * PDF document whose pages are extracted on demand. Opening it only reads the
+ * page count and the page titles; the table of a page is extracted the first
+ * time it is requested and then kept. Pages nobody asked for yet can be
+ * prefetched in the background, requested pages always go first.
+ * The document is owned by a single loader thread because PDFBox objects are not
+ * thread-safe; all methods of this class may be called from any thread.
+ */
+public class LazyPdfDocument implements Closeable {
+
+    private final FileController fileController;
+    private final File file;
+    private final ConversionReport report;
+
+    // Tasks of the loader thread; requested pages are added at the head, prefetching at the tail
+    private final BlockingDeque<Runnable> tasks = new LinkedBlockingDeque<>();
+    private final Thread loader;
+
+    private PDDocument document;
+    private PageLayoutStripper layoutStripper;
+
+    private int pageCount;
+    private List<String> pageTitles;
+    // Future table of each page, null until the page is requested or prefetched
+    private List<CompletableFuture<TableData>> pageTables;
+
+    // Result cache key of the page tables, null if caching is disabled or they are already stored
+    private String cacheKey;
+    // Pages extracted on the loader thread; the page tables are stored in the cache once all are
+    private int extractedPages;
+
+    private boolean prefetching;
+    private volatile boolean closed;
+    
+    // Set once the loader thread has cancelled the pending pages, no page is extracted after that
+    private boolean stopped;
+
+    LazyPdfDocument(FileController fileController, File file) {
+        this.fileController = fileController;
+        this.file = file;
+        this.report = fileController.startReport(file);
+        this.loader = new Thread(this::runTasks, "pdf-page-loader");
+        this.loader.setDaemon(true);
+    }
+
+    /**
+     * Load the document on the loader thread and read its page titles
+     */
+    void open() throws IOException {
+        CompletableFuture<Void> opened = new CompletableFuture<>();
+        tasks.offer(() -> {
+            try {
+                StageTimer loadTimer = StageTimer.start(report, "document load", -1);
+                document = fileController.loadPdf(file, 1);
+                loadTimer.stop();
+                layoutStripper = new PageLayoutStripper();
+                pageCount = document.getNumberOfPages();
+                pageTitles = readPageTitles(document);
+                pageTables = new ArrayList<>(Collections.nCopies(pageCount, null));
+                loadCachedPages();
+                opened.complete(null);
+            } catch (IOException | RuntimeException e) {
+                opened.completeExceptionally(e);
+            }
+        });
+        loader.start();
+
+        try {
+            opened.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException("Opening the PDF file was interrupted", e);
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error opening PDF file: " + cause.getMessage(), cause);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @param pageIndex Index of the page
+     * @return Title of the page from the document outline, or "Page N" if the outline has none
+     */
+    public String getPageTitle(int pageIndex) {
+        return pageTitles.get(pageIndex);
+    }
+
+    /**
+     * @return Stage timings of the pages extracted so far
+     */
+    public ConversionReport getReport() {
+        return report;
+    }
+
+    /**
+     * Get the table of a page, extracting it ahead of any prefetching if it was not requested before.
+     * Pages without a table give a table of their plain text.
+     * @param pageIndex Index of the page
+     * @return Future table of the page, failed if the document was closed before the page was requested
+     */
+    public synchronized CompletableFuture<TableData> getPageTable(int pageIndex) {
+        CompletableFuture<TableData> pageTable = pageTables.get(pageIndex);
+        if (pageTable == null && (closed || stopped)) {
+            // The loader thread no longer takes tasks, a queued page would never complete
+            return CompletableFuture.failedFuture(new IOException("PDF document was closed"));
+        }
+        if (pageTable == null) {
+            pageTable = new CompletableFuture<>();
+            pageTables.set(pageIndex, pageTable);
+            CompletableFuture<TableData> result = pageTable;
+            tasks.offerFirst(() -> extract(pageIndex, result));
+        }
+        return pageTable;
+    }
+
+    /**
+     * Wait for the tables of all pages, extracting the ones not done yet
+     * @return Table of every page, in page order
+     */
+    public List<TableData> getAllPageTables() throws IOException {
+        List<CompletableFuture<TableData>> futures = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            futures.add(getPageTable(i));
+        }
+
+        List<TableData> tables = new ArrayList<>();
+        try {
+            for (CompletableFuture<TableData> future : futures) {
+                tables.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("PDF extraction was interrupted", e);
+        } catch (CancellationException e) {
+            throw new IOException("PDF document was closed before all pages were extracted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error extracting PDF page: " + cause.getMessage(), cause);
+        }
+        return tables;
+    }
+
+    /**
+     * Extract the pages nobody requested yet in the background, one page at a time
+     * so that requested pages do not wait for the whole document
+     */
+    public synchronized void startPrefetch() {
+        if (!prefetching) {
+            prefetching = true;
+            tasks.offerLast(this::prefetchNextPage);
+        }
+    }
+
+    /**
+     * Stop the loader thread after the page it is working on and close the document.
+     * Pages not extracted yet are cancelled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        // Wake up the loader thread if it is waiting for a task
+        tasks.offerFirst(() -> { });
+    }
+
+    /**
+     * Extract the first page not requested yet, then queue the next prefetch behind the requested pages
+     */
+    private void prefetchNextPage() {
+        int pageIndex = -1;
+        CompletableFuture<TableData> pageTable = null;
+        synchronized (this) {
+            for (int i = 0; i < pageCount; i++) {
+                if (pageTables.get(i) == null) {
+                    pageIndex = i;
+                    pageTable = new CompletableFuture<>();
+                    pageTables.set(i, pageTable);
+                    break;
+                }
+            }
+            if (pageIndex < 0) {
+                prefetching = false;
+                return;
+            }
+        }
+
+        extract(pageIndex, pageTable);
+        tasks.offerLast(this::prefetchNextPage);
+    }
+
+    /**
+     * Extract the table of a page on the loader thread
+     */
+    private void extract(int pageIndex, CompletableFuture<TableData> pageTable) {
+        try {
+            PageExtraction page = fileController.extractPage(layoutStripper, document, pageIndex, report);
+            TableData table = page.getTable();
+            if (table == null) {
+                table = fileController.createTextTable(page.getText(), "Page " + (pageIndex + 1));
+            }
+            pageTable.complete(table);
+        } catch (IOException | RuntimeException e) {
+            pageTable.completeExceptionally(e);
+            return;
+        }
+
+        // Failed pages are not counted, so only documents extracted without errors are stored
+        extractedPages++;
+        if (cacheKey != null && extractedPages == pageCount) {
+            List<TableData> tables = new ArrayList<>(pageCount);
+            synchronized (this) {
+                for (CompletableFuture<TableData> table : pageTables) {
+                    tables.add(table.join());
+                }
+            }
+            StageTimer storeTimer = StageTimer.start(report, "cache store", -1);
+            fileController.getResultCache().put(cacheKey, tables);
+            storeTimer.stop();
+            cacheKey = null;
+        }
+    }
+
+    /**
+     * Complete every page from the result cache if the page tables of the file are cached
+     */
+    private synchronized void loadCachedPages() {
+        StageTimer cacheTimer = StageTimer.start(report, "cache lookup", -1);
+        cacheKey = fileController.pdfPagesCacheKey(file);
+        List<TableData> cachedTables = fileController.getCachedTables(cacheKey);
+        cacheTimer.stop();
+        if (cachedTables != null && cachedTables.size() == pageCount) {
+            for (int i = 0; i < pageCount; i++) {
+                pageTables.set(i, CompletableFuture.completedFuture(cachedTables.get(i)));
+            }
+            cacheKey = null;
+        }
+    }
+
+    /**
+     * Run the queued tasks until the document is closed
+     */
+    private void runTasks() {
+        try {
+            while (!closed) {
+                Runnable task = tasks.take();
+                if (!closed) {
+                    task.run();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cancelPending();
+            if (document != null) {
+                try {
+                    fileController.closePdf(document);
+                } catch (IOException e) {
+                    System.err.println("Error closing PDF file: " + e.getMessage());
+                }
+            }
+            fileController.finishReport(report);
+        }
+    }
+
+    private synchronized void cancelPending() {
+        stopped = true;
+        if (pageTables == null) {
+            return;
+        }
+        for (CompletableFuture<TableData> pageTable : pageTables) {
+            if (pageTable != null) {
+                pageTable.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Read the title of each page from the document outline
+     * @param document PDF document
+     * @return Title of each page, "Page N" for pages without an outline entry
+     */
+    private static List<String> readPageTitles(PDDocument document) throws IOException {
+        int pageCount = document.getNumberOfPages();
+        String[] titles = new String[pageCount];
+
+        PDDocumentOutline outline = document.getDocumentCatalog().getDocumentOutline();
+        if (outline != null) {
+            addOutlineTitles(document, outline.children(), titles);
+        }
+
+        List<String> pageTitles = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            pageTitles.add(titles[i] != null ? titles[i] : "Page " + (i + 1));
+        }
+        return pageTitles;
+    }
+
+    /**
+     * Use the first outline entry pointing at a page as the title of the page
+     */
+    private static void addOutlineTitles(PDDocument document, Iterable<PDOutlineItem> items, String[] titles) throws IOException {
+        for (PDOutlineItem item : items) {
+            PDPage page = item.findDestinationPage(document);
+            if (page != null && item.getTitle() != null && !item.getTitle().trim().isEmpty()) {
+                int pageIndex = document.getPages().indexOf(page);
+                if (pageIndex >= 0 && titles[pageIndex] == null) {
+                    titles[pageIndex] = item.getTitle().trim();
+                }
+            }
+            addOutlineTitles(document, item.children(), titles);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.text.TextPosition;
+
+import model.PageLayout;
+
+/**
+ * Cheap first pass over a page layout that tells pages which clearly hold no
+ * table apart from pages worth running the table extractors on. The score counts
+ * text lines with a column gap (at least two spaces wide between words) and text
+ * lines with words starting at an x-coordinate shared by many other lines.
+ * Prose has neither; tables have both on most of their rows.
+ */
+public class PageClassifier {
+
+    /**
+     * Kind of content found on a page
+     */
+    public enum PageKind {
+        /** No text at all */
+        BLANK,
+        /** Text without any sign of a table */
+        TEXT,
+        /** Text that may hold a table */
+        TABLE_CANDIDATE
+    }
+
+    // Word starts closer than this are aligned
+    private static final float ALIGN_TOLERANCE = 1.5f;
+
+    // Fewest lines, and smallest share of all lines, that make a column of aligned words
+    private static final int MIN_ALIGNED_LINES = 4;
+    private static final float MIN_ALIGNED_SHARE = 0.25f;
+
+    // Lowest score of a page that may hold a table
+    private static final int MIN_TABLE_SCORE = 2;
+
+    /**
+     * Classify a page from its layout
+     * @param layout Layout of the page
+     * @return Kind of content on the page
+     */
+    public PageKind classify(PageLayout layout) {
+        List<TextPosition> positions = layout.getTextPositions();
+        int[] lineStarts = layout.getLineStarts();
+        if (positions.isEmpty() || lineStarts.length == 0) {
+            return PageKind.BLANK;
+        }
+
+        // A table needs at least a header row and a data row
+        if (lineStarts.length < 2) {
+            return PageKind.TEXT;
+        }
+
+        int score = countColumnGapLines(layout) + countAlignedLines(layout, positions, lineStarts);
+        return score >= MIN_TABLE_SCORE ? PageKind.TABLE_CANDIDATE : PageKind.TEXT;
+    }
+
+    /**
+     * Count the lines with a gap of at least two spaces between two glyphs.
+     * Space glyphs are part of the gap.
+     */
+    private int countColumnGapLines(PageLayout layout) {
+        TextLineCursor cursor = new TextLineCursor(layout);
+        int count = 0;
+        for (int line = 0; line < cursor.getLineCount(); line++) {
+            cursor.startLine(line);
+            while (cursor.next()) {
+                if (cursor.isAfterColumnGap()) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the lines with a word, other than the first of the line, that starts
+     * in a column of aligned word starts
+     */
+    private int countAlignedLines(PageLayout layout, List<TextPosition> positions, int[] lineStarts) {
+        // Start x-coordinate and line of every word except the first of each line,
+        // packed into longs so they sort by x without boxing
+        long[] starts = new long[positions.size()];
+        int count = 0;
+        TextLineCursor cursor = new TextLineCursor(layout);
+        for (int line = 0; line < lineStarts.length; line++) {
+            boolean firstWord = true;
+            cursor.startLine(line);
+            while (cursor.next()) {
+                if (firstWord) {
+                    firstWord = false;
+                } else if (cursor.isWordStart()) {
+                    float x = Math.max(cursor.glyph().getX(), 0f);
+                    starts[count++] = ((long) Float.floatToIntBits(x) << 32) | line;
+                }
+            }
+        }
+        Arrays.sort(starts, 0, count);
+
+        int minLines = Math.max(MIN_ALIGNED_LINES, (int) Math.ceil(lineStarts.length * MIN_ALIGNED_SHARE));
+        boolean[] alignedLines = new boolean[lineStarts.length];
+        int[] lastGroupOfLine = new int[lineStarts.length];
+        Arrays.fill(lastGroupOfLine, -1);
+
+        // Group word starts within the tolerance of the first start of the group
+        int groupStart = 0;
+        while (groupStart < count) {
+            float groupX = Float.intBitsToFloat((int) (starts[groupStart] >>> 32));
+            int groupEnd = groupStart;
+            int distinctLines = 0;
+            while (groupEnd < count && Float.intBitsToFloat((int) (starts[groupEnd] >>> 32)) - groupX <= ALIGN_TOLERANCE) {
+                int groupLine = (int) starts[groupEnd];
+                if (lastGroupOfLine[groupLine] != groupStart) {
+                    lastGroupOfLine[groupLine] = groupStart;
+                    distinctLines++;
+                }
+                groupEnd++;
+            }
+            if (distinctLines >= minLines) {
+                for (int i = groupStart; i < groupEnd; i++) {
+                    alignedLines[(int) starts[i]] = true;
+                }
+            }
+            groupStart = groupEnd;
+        }
+
+        int aligned = 0;
+        for (boolean isAligned : alignedLines) {
+            if (isAligned) {
+                aligned++;
+            }
+        }
+        return aligned;
+    }
+}
@@ -0,0 +1,82 @@
+package controller;
+
+import java.util.List;
+
+import model.TableData;
+
+/**
+ * Result of extracting a single PDF page
+ */
+class PageExtraction {
+    private final int pageIndex;
+    private final TableData table;
+    private final String text;
+    private final boolean textPage;
+    private final float[] columnBoundaries;
+    private final List<String> firstRow;
+
+    PageExtraction(int pageIndex, TableData table, String text) {
+        this(pageIndex, table, text, false);
+    }
+
+    PageExtraction(int pageIndex, TableData table, String text, boolean textPage) {
+        this(pageIndex, table, text, textPage, null, table != null ? table.getHeaders() : null);
+    }
+
+    /**
+     * @param pageIndex Index of the page
+     * @param table Table found on the page, or null
+     * @param text Plain text of the page
+     * @param textPage true if the page holds text without a table
+     * @param columnBoundaries X-coordinates of the column boundaries of the table, or null if unknown
+     * @param firstRow Cells of the first table row as extracted, before they became the headers
+     */
+    PageExtraction(int pageIndex, TableData table, String text, boolean textPage,
+                   float[] columnBoundaries, List<String> firstRow) {
+        this.pageIndex = pageIndex;
+        this.table = table;
+        this.text = text;
+        this.textPage = textPage;
+        this.columnBoundaries = columnBoundaries;
+        this.firstRow = firstRow;
+    }
+
+    int getPageIndex() {
+        return pageIndex;
+    }
+
+    /**
+     * @return Table found on the page, or null if the page has no table
+     */
+    TableData getTable() {
+        return table;
+    }
+
+    /**
+     * @return Plain text of the page
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @return true if the page holds text without a table and skipped the table extractors
+     */
+    boolean isTextPage() {
+        return textPage;
+    }
+
+    /**
+     * @return X-coordinates of the column boundaries of the table, or null if the table was found in the page text
+     */
+    float[] getColumnBoundaries() {
+        return columnBoundaries;
+    }
+
+    /**
+     * @return Cells of the first table row as extracted, before empty cells were given a header name
+     */
+    List<String> getFirstRow() {
+        return firstRow;
+    }
+}
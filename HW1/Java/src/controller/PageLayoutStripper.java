@@ -0,0 +1,103 @@
+package controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import model.PageLayout;
+
+/**
+ * Text stripper that reads a page once and records every glyph position
+ * together with the page text. Instances are not thread-safe; use one per thread.
+ */
+public class PageLayoutStripper extends PDFTextStripper {
+
+    private List<TextPosition> glyphs;
+    private List<TextPosition> textPositions;
+
+    // Word and line boundaries as indexes into textPositions
+    private int[] wordStarts;
+    private int wordCount;
+    private int[] lineStarts;
+    private int lineCount;
+    private boolean lineStarted;
+
+    public PageLayoutStripper() throws IOException {
+        setSortByPosition(true);
+    }
+
+    /**
+     * Parse a page and build its layout model
+     * @param document PDF document
+     * @param pageIndex Index of the page to read
+     * @return Layout of the page
+     */
+    public PageLayout readPage(PDDocument document, int pageIndex) throws IOException {
+        glyphs = new ArrayList<>();
+        textPositions = new ArrayList<>();
+        wordStarts = new int[256];
+        wordCount = 0;
+        lineStarts = new int[64];
+        lineCount = 0;
+        lineStarted = false;
+
+        setStartPage(pageIndex + 1);
+        setEndPage(pageIndex + 1);
+        String text = getText(document);
+
+        PDPage page = document.getPage(pageIndex);
+        PageLayout layout = new PageLayout(pageIndex,
+                page.getMediaBox().getWidth(), page.getMediaBox().getHeight(),
+                glyphs, textPositions,
+                Arrays.copyOf(wordStarts, wordCount), Arrays.copyOf(lineStarts, lineCount), text);
+
+        glyphs = null;
+        textPositions = null;
+        wordStarts = null;
+        lineStarts = null;
+        return layout;
+    }
+
+    @Override
+    protected void writePage() throws IOException {
+        // Keep a copy in content stream order before the page is sorted for output
+        for (List<TextPosition> article : charactersByArticle) {
+            glyphs.addAll(article);
+        }
+        super.writePage();
+    }
+
+    @Override
+    protected void writeString(String text, List<TextPosition> positions) throws IOException {
+        // The stripper writes one word per call; a word not preceded by a word separator starts a line
+        if (!positions.isEmpty()) {
+            if (wordCount == wordStarts.length) {
+                wordStarts = Arrays.copyOf(wordStarts, wordCount * 2);
+            }
+            wordStarts[wordCount++] = textPositions.size();
+            if (!lineStarted) {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                lineStarts[lineCount++] = textPositions.size();
+                lineStarted = true;
+            }
+        }
+        textPositions.addAll(positions);
+        super.writeString(text, positions);
+        lineStarted = false;
+    }
+
+    @Override
+    protected void writeWordSeparator() throws IOException {
+        // The next word continues the current line
+        lineStarted = true;
+        super.writeWordSeparator();
+    }
+}
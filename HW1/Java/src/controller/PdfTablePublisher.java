@@ -0,0 +1,210 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import model.ConversionReport;
+import model.TableData;
+import util.FileValidator;
+import util.StageTimer;
+
+/**
+ * Publishes the tables of a PDF file page by page as soon as each page is extracted.
+ * Every subscription reads the document again on its own producer thread. Pages are
+ * only extracted while the subscriber has room in its buffer, so the memory used
+ * stays bounded no matter how many pages the document has, unless the controller has
+ * a result cache: then the published tables of a complete request are kept until the
+ * end of the document and stored in the cache.
+ */
+public class PdfTablePublisher implements Flow.Publisher<TableData> {
+
+    // Maximum number of extracted tables waiting for a subscriber
+    private static final int BUFFER_CAPACITY = 16;
+
+    private final FileController fileController;
+    private final File file;
+    private final ExtractionRequest request;
+
+    /**
+     * @param fileController Controller whose settings and result cache are used
+     * @param file PDF file
+     * @param request Pages, columns and rows to extract
+     */
+    public PdfTablePublisher(FileController fileController, File file, ExtractionRequest request) {
+        this.fileController = fileController;
+        this.file = file;
+        this.request = request;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TableData> subscriber) {
+        SubmissionPublisher<TableData> publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), BUFFER_CAPACITY);
+        publisher.subscribe(subscriber);
+
+        Thread producer = new Thread(() -> produce(publisher), "pdf-table-publisher");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Publish the tables of the file and complete the subscription. Read errors are
+     * published as an error table; any other failure completes the subscription
+     * exceptionally, so that partial output does not look like a complete document.
+     * @param publisher Publisher of the current subscription
+     */
+    private void produce(SubmissionPublisher<TableData> publisher) {
+        ConversionReport report = fileController.startReport(file);
+        try {
+            publishTables(publisher, report);
+            publisher.close();
+        } catch (IOException e) {
+            System.err.println("Error processing PDF file: " + e.getMessage());
+            e.printStackTrace();
+            publisher.submit(fileController.createErrorTable("Error processing PDF file: " + e.getMessage(),
+                    "Error Message", file.getName()));
+            publisher.close();
+        } catch (RuntimeException e) {
+            System.err.println("Error processing PDF file: " + e);
+            e.printStackTrace();
+            publisher.closeExceptionally(e);
+        } finally {
+            fileController.finishReport(report);
+        }
+    }
+
+    /**
+     * Extract the pages one after another and submit their tables.
+     * submit blocks while the subscriber buffer is full.
+     * @param publisher Publisher of the current subscription
+     * @param report Report receiving the stage timings
+     */
+    private void publishTables(SubmissionPublisher<TableData> publisher, ConversionReport report) throws IOException {
+        // Validate file before processing
+        if (!FileValidator.isValidPdfFile(file)) {
+            System.err.println("Invalid PDF file: " + file.getName());
+            publisher.submit(fileController.createErrorTable("Invalid PDF file: " + file.getName(),
+                    "Error Message", file.getName()));
+            return;
+        }
+
+        // Publish the tables of a file that was converted before without opening it
+        StageTimer cacheTimer = StageTimer.start(report, "cache lookup", -1);
+        String cacheKey = request.isAll() ? fileController.pdfCacheKey(file) : null;
+        List<TableData> cachedTables = fileController.getCachedTables(cacheKey);
+        cacheTimer.stop();
+        if (cachedTables != null) {
+            for (TableData table : cachedTables) {
+                publisher.submit(table);
+            }
+            return;
+        }
+
+        StageTimer loadTimer = StageTimer.start(report, "document load", -1);
+        PDDocument document = fileController.loadPdf(file, 1);
+        loadTimer.stop();
+        
+        try {
+            int pageCount = document.getNumberOfPages();
+            int firstPage = Math.min(request.getFirstPage(), pageCount);
+            int endPage = Math.min(request.getEndPage(), pageCount);
+            PageLayoutStripper layoutStripper = new PageLayoutStripper();
+            
+            // Tables published so far, kept only to store them in the result cache
+            List<TableData> publishedTables = cacheKey != null ? new ArrayList<>() : null;
+
+            // Page text is only kept until the first table shows up,
+            // it is needed for the text fallback of documents without tables
+            StringBuilder documentText = new StringBuilder();
+            boolean tableFound = false;
+            
+            // Text pages before the first table, published once the document turns out to have tables
+            List<PageExtraction> pendingTextPages = new ArrayList<>();
+            
+            // Holds the table that may continue on the next page, the only table kept in memory
+            TableStitcher stitcher = fileController.createTableStitcher();
+
+            for (int pageIndex = firstPage; pageIndex < endPage; pageIndex++) {
+                // Stop reading pages once the subscriber has cancelled
+                if (publisher.getNumberOfSubscribers() == 0) {
+                    return;
+                }
+
+                PageExtraction page = fileController.extractPage(layoutStripper, document, pageIndex, report);
+                if (page.getTable() != null) {
+                    if (!tableFound) {
+                        for (PageExtraction textPage : pendingTextPages) {
+                            submit(publisher, createPageTextTable(textPage), publishedTables);
+                        }
+                        pendingTextPages = null;
+                        documentText = null;
+                        tableFound = true;
+                    }
+                    submit(publisher, stitcher.add(page), publishedTables);
+                } else if (tableFound) {
+                    // A page without a table ends a table continued over several pages
+                    submit(publisher, stitcher.finish(), publishedTables);
+                    if (page.isTextPage()) {
+                        submit(publisher, createPageTextTable(page), publishedTables);
+                    }
+                } else {
+                    documentText.append(page.getText());
+                    if (page.isTextPage()) {
+                        pendingTextPages.add(page);
+                    }
+                }
+            }
+
+            submit(publisher, stitcher.finish(), publishedTables);
+
+            // If no tables were found, publish a simple text representation
+            if (!tableFound) {
+                StageTimer textTimer = StageTimer.start(report, "document text fallback", -1);
+                TableData textTable = fileController.createTextTable(documentText.toString(), file.getName());
+                textTimer.stop();
+                submit(publisher, textTable, publishedTables);
+            }
+            
+            if (publishedTables != null) {
+                StageTimer storeTimer = StageTimer.start(report, "cache store", -1);
+                fileController.getResultCache().put(cacheKey, publishedTables);
+                storeTimer.stop();
+            }
+        } finally {
+            fileController.closePdf(document);
+        }
+    }
+
+    /**
+     * Submit the requested columns and rows of a table unless nothing of it is requested
+     * @param publisher Publisher of the current subscription
+     * @param table Table to submit, may be null
+     * @param publishedTables Tables submitted so far, or null if they are not kept
+     */
+    private void submit(SubmissionPublisher<TableData> publisher, TableData table, List<TableData> publishedTables) {
+        if (table != null) {
+            table = request.apply(table);
+        }
+        if (table != null) {
+            publisher.submit(table);
+            if (publishedTables != null) {
+                publishedTables.add(table);
+            }
+        }
+    }
+
+    /**
+     * Create the plain text table of a page without a table
+     * @param page Extraction result of the page
+     * @return TableData with the page text
+     */
+    private TableData createPageTextTable(PageExtraction page) {
+        return fileController.createTextTable(page.getText(), "Page " + (page.getPageIndex() + 1));
+    }
+}
@@ -0,0 +1,196 @@
+package controller;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+import util.CoordinateClusterer;
+
+/**
+ * Finds the ruling lines a page draws with its line and rectangle operators.
+ * Stroked horizontal and vertical segments and thin filled rectangles count as
+ * rulings; text and images are skipped. The positions are given in the same
+ * coordinates as the text based boundaries: x from the left and y from the
+ * bottom of the media box.
+ * Instances are not thread-safe; use one per page.
+ */
+public class RulingLineDetector extends PDFGraphicsStreamEngine {
+
+    // Largest deviation for a segment to count as horizontal or vertical
+    private static final float AXIS_TOLERANCE = 1f;
+
+    // Shortest segment that counts as a ruling
+    private static final float MIN_RULING_LENGTH = 10f;
+
+    // Filled rectangles thinner than this are drawn lines
+    private static final float MAX_RULING_THICKNESS = 3f;
+
+    // Rulings closer than this are the same boundary
+    private static final float MERGE_TOLERANCE = 2f;
+
+    private final float offsetX;
+    private final float offsetY;
+
+    private final CoordinateClusterer horizontalRulings = new CoordinateClusterer(MERGE_TOLERANCE);
+    private final CoordinateClusterer verticalRulings = new CoordinateClusterer(MERGE_TOLERANCE);
+
+    // Segments (x1, y1, x2, y2) and rectangles (minX, minY, maxX, maxY) of the current path
+    private final List<float[]> pathSegments = new ArrayList<>();
+    private final List<float[]> pathRectangles = new ArrayList<>();
+    private final Point2D.Float currentPoint = new Point2D.Float();
+    private final Point2D.Float subpathStart = new Point2D.Float();
+
+    public RulingLineDetector(PDPage page) {
+        super(page);
+        offsetX = page.getMediaBox().getLowerLeftX();
+        offsetY = page.getMediaBox().getLowerLeftY();
+    }
+
+    /**
+     * Run through the content stream of the page and collect its rulings
+     */
+    public void detect() throws IOException {
+        processPage(getPage());
+    }
+
+    /**
+     * @return Y-coordinates of horizontal rulings, ascending from the bottom of the page
+     */
+    public float[] getHorizontalRulings() {
+        return horizontalRulings.toArray();
+    }
+
+    /**
+     * @return X-coordinates of vertical rulings, ascending from the left of the page
+     */
+    public float[] getVerticalRulings() {
+        return verticalRulings.toArray();
+    }
+
+    @Override
+    public void showTextString(byte[] string) throws IOException {
+        // Text is read by the layout stripper, no need to decode glyphs here
+    }
+
+    @Override
+    public void showTextStrings(COSArray array) throws IOException {
+        // Text is read by the layout stripper, no need to decode glyphs here
+    }
+
+    @Override
+    public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+        float minX = (float) Math.min(Math.min(p0.getX(), p1.getX()), Math.min(p2.getX(), p3.getX()));
+        float maxX = (float) Math.max(Math.max(p0.getX(), p1.getX()), Math.max(p2.getX(), p3.getX()));
+        float minY = (float) Math.min(Math.min(p0.getY(), p1.getY()), Math.min(p2.getY(), p3.getY()));
+        float maxY = (float) Math.max(Math.max(p0.getY(), p1.getY()), Math.max(p2.getY(), p3.getY()));
+        pathRectangles.add(new float[] { minX, minY, maxX, maxY });
+
+        currentPoint.setLocation(p0);
+        subpathStart.setLocation(p0);
+    }
+
+    @Override
+    public void moveTo(float x, float y) throws IOException {
+        currentPoint.setLocation(x, y);
+        subpathStart.setLocation(x, y);
+    }
+
+    @Override
+    public void lineTo(float x, float y) throws IOException {
+        pathSegments.add(new float[] { currentPoint.x, currentPoint.y, x, y });
+        currentPoint.setLocation(x, y);
+    }
+
+    @Override
+    public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+        // Curves are never table borders
+        currentPoint.setLocation(x3, y3);
+    }
+
+    @Override
+    public Point2D getCurrentPoint() throws IOException {
+        return currentPoint;
+    }
+
+    @Override
+    public void closePath() throws IOException {
+        lineTo(subpathStart.x, subpathStart.y);
+    }
+
+    @Override
+    public void endPath() throws IOException {
+        clearPath();
+    }
+
+    @Override
+    public void strokePath() throws IOException {
+        for (float[] segment : pathSegments) {
+            addSegment(segment[0], segment[1], segment[2], segment[3]);
+        }
+        for (float[] rect : pathRectangles) {
+            addSegment(rect[0], rect[1], rect[2], rect[1]);
+            addSegment(rect[0], rect[3], rect[2], rect[3]);
+            addSegment(rect[0], rect[1], rect[0], rect[3]);
+            addSegment(rect[2], rect[1], rect[2], rect[3]);
+        }
+        clearPath();
+    }
+
+    @Override
+    public void fillPath(int windingRule) throws IOException {
+        // Thin filled rectangles are a common way to draw lines
+        for (float[] rect : pathRectangles) {
+            float width = rect[2] - rect[0];
+            float height = rect[3] - rect[1];
+            if (height <= MAX_RULING_THICKNESS && width >= MIN_RULING_LENGTH) {
+                horizontalRulings.add((rect[1] + rect[3]) / 2 - offsetY);
+            } else if (width <= MAX_RULING_THICKNESS && height >= MIN_RULING_LENGTH) {
+                verticalRulings.add((rect[0] + rect[2]) / 2 - offsetX);
+            }
+        }
+        clearPath();
+    }
+
+    @Override
+    public void fillAndStrokePath(int windingRule) throws IOException {
+        strokePath();
+    }
+
+    @Override
+    public void clip(int windingRule) throws IOException {
+        // The path is used by the following stroke or fill, or discarded by endPath
+    }
+
+    @Override
+    public void drawImage(PDImage pdImage) throws IOException {
+        // Images are never table borders
+    }
+
+    @Override
+    public void shadingFill(COSName shadingName) throws IOException {
+        // Shadings are never table borders
+    }
+
+    /**
+     * Keep a stroked segment if it is a long enough horizontal or vertical line
+     */
+    private void addSegment(float x1, float y1, float x2, float y2) {
+        if (Math.abs(y1 - y2) <= AXIS_TOLERANCE && Math.abs(x1 - x2) >= MIN_RULING_LENGTH) {
+            horizontalRulings.add((y1 + y2) / 2 - offsetY);
+        } else if (Math.abs(x1 - x2) <= AXIS_TOLERANCE && Math.abs(y1 - y2) >= MIN_RULING_LENGTH) {
+            verticalRulings.add((x1 + x2) / 2 - offsetX);
+        }
+    }
+
+    private void clearPath() {
+        pathSegments.clear();
+        pathRectangles.clear();
+    }
+}
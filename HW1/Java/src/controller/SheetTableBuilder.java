@@ -0,0 +1,351 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import model.TableData;
+import util.MergedRegionIndex;
+
+/**
+ * Builds the table of a worksheet from rows fed one at a time by a streaming
+ * reader, with the same result as reading the sheet from the workbook object
+ * model: the first row gives the headers and the columns between its first and
+ * last cell; following rows are cut to those columns and kept if they have a
+ * non-empty cell. Only the cells of the current row are held besides the encoded
+ * table. When merged cells are filled, all rows are kept as lists with their sheet row index
+ * until the merged regions of the sheet are known, because the regions are only
+ * stored after the cells in both file formats.
+ * The columns and rows of an extraction request are selected as the rows come in;
+ * once the headers are known, cells of the other columns need not be converted.
+ */
+class SheetTableBuilder {
+
+    private final String tableName;
+    private final boolean fillMergedCells;
+    private final ExtractionRequest request;
+
+    // Cells of the current row in the order they were added
+    private int[] cellColumns = new int[16];
+    private String[] cellValues = new String[16];
+    private int cellCount;
+    private int rowIndex;
+
+    private boolean headerDone;
+    private int rowCount;
+    private int minColIndex;
+    private int maxColIndex;
+
+    // Headers as they are worked out, and the table the rows go into once the headers are final
+    private final List<String> headers = new ArrayList<>();
+    private TableData.Builder table;
+
+    // Rows waiting for the merged regions, only kept when merged cells are filled
+    private List<List<String>> pendingRows;
+
+    // Sheet row index of the header and of every table row, only kept when merged cells are filled
+    private int headerRowIndex;
+    private String[] headerValues;
+    private int[] rowIndexes;
+
+    // Header positions of the kept columns and of the filtered column, and the header columns read from the rows
+    private int[] keptPositions;
+    private int filterPosition = -1;
+    private boolean[] readColumns;
+
+    /**
+     * @param tableName Name of the table
+     * @param fillMergedCells Whether the cells covered by merged regions get the value of the region;
+     *                        if so, {@link #fillMergedCells} must be called once all rows are read
+     * @param request Columns and rows to keep
+     */
+    SheetTableBuilder(String tableName, boolean fillMergedCells, ExtractionRequest request) {
+        this.tableName = tableName;
+        this.fillMergedCells = fillMergedCells;
+        this.request = request;
+        if (fillMergedCells) {
+            pendingRows = new ArrayList<>();
+            rowIndexes = new int[16];
+        }
+    }
+
+    /**
+     * Start a new row
+     * @param rowIndex Zero-based row index in the sheet
+     */
+    void startRow(int rowIndex) {
+        this.rowIndex = rowIndex;
+        cellCount = 0;
+    }
+
+    /**
+     * Check whether a cell of the current row is used, so that readers can skip converting
+     * the value of cells that are not. All cells are used until the headers are known and
+     * when merged cells are filled, since the value of any cell may be copied.
+     * @param column Zero-based column index
+     * @return true if the cell has to be added
+     */
+    boolean wantsCell(int column) {
+        if (readColumns == null) {
+            return true;
+        }
+        int position = column - minColIndex;
+        return position >= 0 && position < readColumns.length && readColumns[position];
+    }
+
+    /**
+     * Add a cell to the current row. Cells without a value but with a style still count
+     * as cells of the row.
+     * @param column Zero-based column index
+     * @param value Cell value converted to text, empty for blank cells
+     */
+    void addCell(int column, String value) {
+        if (cellCount == cellColumns.length) {
+            cellColumns = Arrays.copyOf(cellColumns, cellCount * 2);
+            cellValues = Arrays.copyOf(cellValues, cellCount * 2);
+        }
+        cellColumns[cellCount] = column;
+        cellValues[cellCount] = value;
+        cellCount++;
+    }
+
+    /**
+     * Finish the current row, turning it into the headers if it is the first row
+     */
+    void endRow() {
+        rowCount++;
+        if (!headerDone) {
+            headerDone = true;
+            addHeaders();
+        } else if (cellCount > 0) {
+            addRow();
+        }
+    }
+
+    /**
+     * @return Number of rows read, including rows without cells
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Build the table once all rows are read, and after {@link #fillMergedCells} if merged cells are filled
+     * @return Table with the headers and the rows read
+     */
+    TableData getTable() {
+        if (table == null) {
+            // Sheet without rows
+            table = TableData.builder(tableName).addHeaders(headers);
+        }
+        return table.build();
+    }
+
+    /**
+     * Give every cell of the table covered by a merged region the value of the top-left
+     * cell of the region, then drop the rows that are still blank. Each cell is looked up
+     * once in the index; top-left cells outside the table leave the covered cells as they are.
+     * @param mergedRegions Merged regions of the sheet
+     */
+    void fillMergedCells(MergedRegionIndex mergedRegions) {
+        if (!fillMergedCells || !headerDone) {
+            return;
+        }
+
+        List<List<String>> rows = pendingRows;
+        if (!mergedRegions.isEmpty()) {
+            if (headerValues != null) {
+                for (int column = minColIndex; column < maxColIndex; column++) {
+                    String value = mergedValue(mergedRegions, headerRowIndex, column);
+                    if (value != null) {
+                        headerValues[column - minColIndex] = value;
+                    }
+                }
+                setHeaders(headerValues);
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                List<String> row = rows.get(i);
+                for (int column = minColIndex; column < maxColIndex; column++) {
+                    String value = mergedValue(mergedRegions, rowIndexes[i], column);
+                    if (value != null) {
+                        row.set(column - minColIndex, value);
+                    }
+                }
+            }
+        }
+
+        if (isSelecting()) {
+            selectColumns();
+            rows.removeIf(row -> !accepts(row));
+            rows.replaceAll(this::project);
+        }
+
+        table = TableData.builder(tableName).addHeaders(headers);
+        for (List<String> row : rows) {
+            if (!isBlank(row)) {
+                table.addRow(row);
+            }
+        }
+        pendingRows = null;
+    }
+
+    /**
+     * @return Value of the top-left cell of the region covering a cell, or null if the cell
+     *         is not covered, is the top-left cell itself or the top-left cell is not in the table
+     */
+    private String mergedValue(MergedRegionIndex mergedRegions, int row, int column) {
+        CellRangeAddress region = mergedRegions.find(row, column);
+        if (region == null) {
+            return null;
+        }
+        int firstRow = region.getFirstRow();
+        int firstColumn = region.getFirstColumn();
+        if ((firstRow == row && firstColumn == column) || firstColumn < minColIndex || firstColumn >= maxColIndex) {
+            return null;
+        }
+
+        if (firstRow == headerRowIndex) {
+            return headerValues != null ? headerValues[firstColumn - minColIndex] : null;
+        }
+        int index = Arrays.binarySearch(rowIndexes, 0, pendingRows.size(), firstRow);
+        return index >= 0 ? pendingRows.get(index).get(firstColumn - minColIndex) : null;
+    }
+
+    private void addHeaders() {
+        headerRowIndex = rowIndex;
+        if (cellCount == 0) {
+            // No cells in header row, create default headers
+            headers.add("Column 1");
+            minColIndex = -1;
+            maxColIndex = 1;
+        } else {
+            addHeaderCells();
+        }
+
+        if (!fillMergedCells) {
+            if (isSelecting()) {
+                selectColumns();
+            }
+            table = TableData.builder(tableName).addHeaders(headers);
+        }
+    }
+
+    private void addHeaderCells() {
+        minColIndex = Integer.MAX_VALUE;
+        maxColIndex = -1;
+        for (int i = 0; i < cellCount; i++) {
+            minColIndex = Math.min(minColIndex, cellColumns[i]);
+            maxColIndex = Math.max(maxColIndex, cellColumns[i] + 1);
+        }
+
+        String[] values = rowValues().toArray(new String[0]);
+        if (fillMergedCells) {
+            // Blank header cells may still get the value of a merged region
+            headerValues = values;
+        }
+        setHeaders(values);
+    }
+
+    private void setHeaders(String[] values) {
+        headers.clear();
+        for (int i = 0; i < values.length; i++) {
+            headers.add(values[i].trim().isEmpty() ? "Column " + (minColIndex + i + 1) : values[i]);
+        }
+    }
+
+    private void addRow() {
+        List<String> rowData = rowValues();
+
+        // Only add row if it has some non-empty cells, blank rows may still be filled from merged regions
+        if (fillMergedCells) {
+            int count = pendingRows.size();
+            if (count == rowIndexes.length) {
+                rowIndexes = Arrays.copyOf(rowIndexes, count * 2);
+            }
+            rowIndexes[count] = rowIndex;
+            pendingRows.add(rowData);
+            return;
+        }
+
+        if (keptPositions != null) {
+            if (!accepts(rowData)) {
+                return;
+            }
+            rowData = project(rowData);
+        }
+        if (!isBlank(rowData)) {
+            table.addRow(rowData);
+        }
+    }
+
+    private boolean isSelecting() {
+        return request.getColumns() != null || request.hasRowFilter();
+    }
+
+    /**
+     * Find the kept and the filtered columns in the headers and keep only the selected headers
+     */
+    private void selectColumns() {
+        keptPositions = request.columnPositions(headers);
+        filterPosition = request.filterPosition(headers);
+
+        readColumns = new boolean[maxColIndex - minColIndex];
+        for (int position : keptPositions) {
+            readColumns[position] = true;
+        }
+        if (filterPosition >= 0) {
+            readColumns[filterPosition] = true;
+        }
+
+        List<String> keptHeaders = project(headers);
+        headers.clear();
+        headers.addAll(keptHeaders);
+    }
+
+    /**
+     * @return true if the row passes the row filter of the request
+     */
+    private boolean accepts(List<String> rowData) {
+        if (!request.hasRowFilter()) {
+            return true;
+        }
+        return filterPosition >= 0 && request.accepts(rowData.get(filterPosition));
+    }
+
+    /**
+     * @return Values of the kept columns of a row, in request order
+     */
+    private List<String> project(List<String> rowData) {
+        List<String> projected = new ArrayList<>(keptPositions.length);
+        for (int position : keptPositions) {
+            projected.add(rowData.get(position));
+        }
+        return projected;
+    }
+
+    private static boolean isBlank(List<String> rowData) {
+        for (String value : rowData) {
+            if (!value.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Values of the current row between the header columns, empty for missing cells
+     */
+    private List<String> rowValues() {
+        String[] values = new String[maxColIndex - minColIndex];
+        Arrays.fill(values, "");
+        for (int i = 0; i < cellCount; i++) {
+            int column = cellColumns[i];
+            if (column >= minColIndex && column < maxColIndex) {
+                values[column - minColIndex] = cellValues[i];
+            }
+        }
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,368 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder.SheetRecordCollectingListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MergeCellsRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import model.ConversionReport;
+import model.TableData;
+import util.MergedRegionIndex;
+import util.StageTimer;
+
+/**
+ * Reads the sheets of a legacy .xls workbook with the HSSF event model, so rows go
+ * into the tables while the records are read and the sheet object tree is never
+ * built. Cell values are converted like the object model path does: integral
+ * numbers without decimals, dates as yyyy-MM-dd and cached formula results.
+ * The merged regions of a sheet follow its cells, so merged cells are filled when
+ * the sheet ends.
+ */
+class StreamingXlsReader {
+
+    private final File file;
+    private final boolean fillMergedCells;
+    private final ExtractionRequest request;
+    private final boolean debug;
+
+    /**
+     * @param file .xls file to read
+     * @param fillMergedCells Whether the cells covered by merged regions get the value of the region
+     * @param request Sheets, columns and rows to read
+     * @param debug Whether to print the number of sheets to the console
+     */
+    StreamingXlsReader(File file, boolean fillMergedCells, ExtractionRequest request, boolean debug) {
+        this.file = file;
+        this.fillMergedCells = fillMergedCells;
+        this.request = request;
+        this.debug = debug;
+    }
+
+    /**
+     * Read all sheets of the workbook
+     * @param report Report receiving the stage timings
+     * @return Table of every sheet with data rows, in workbook order
+     */
+    List<TableData> readSheets(ConversionReport report) throws IOException {
+        StageTimer loadTimer = StageTimer.start(report, "workbook load", -1);
+        try (POIFSFileSystem fileSystem = new POIFSFileSystem(file, true)) {
+            loadTimer.stop();
+
+            RecordListener listener = new RecordListener(report);
+            FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(listener);
+            SheetRecordCollectingListener workbookListener = new SheetRecordCollectingListener(formatListener);
+            listener.formatListener = formatListener;
+            listener.workbookListener = workbookListener;
+
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(workbookListener);
+            new HSSFEventFactory().processWorkbookEvents(request, fileSystem);
+
+            if (debug) {
+                System.out.println("Excel workbook streamed. Number of sheets: " + listener.sheetIndex);
+            }
+            return listener.tables;
+        }
+    }
+
+    /**
+     * Listener that feeds the cell records of each worksheet into a table builder.
+     * Row records come in blocks ahead of the cells of their rows, so rows without
+     * cells are remembered and handed to the builder once the cells pass them.
+     */
+    private class RecordListener implements HSSFListener {
+        private final ConversionReport report;
+        private final List<TableData> tables = new ArrayList<>();
+
+        private FormatTrackingHSSFListener formatListener;
+        private SheetRecordCollectingListener workbookListener;
+
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<>();
+        private BoundSheetRecord[] orderedSheets;
+        private SSTRecord sharedStrings;
+        private boolean date1904;
+        private CellValueConverter converter;
+
+        // Extended formats of the workbook, indexed by the style index of the cells
+        private final List<ExtendedFormatRecord> extendedFormats = new ArrayList<>();
+
+        // Sheet being read, null outside worksheets
+        private int substreamDepth;
+        private boolean inSheet;
+        private SheetTableBuilder builder;
+        private StageTimer sheetTimer;
+        private int sheetIndex;
+
+        // Rows announced by row records and not handed to the builder yet
+        private final BitSet announcedRows = new BitSet();
+        private int currentRow;
+
+        // Merged regions of the sheet, only collected when merged cells are filled
+        private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+
+        // Formula waiting for the string record holding its result
+        private FormulaRecord pendingFormula;
+
+        RecordListener(ConversionReport report) {
+            this.report = report;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+                case BoundSheetRecord.sid:
+                    boundSheets.add((BoundSheetRecord) record);
+                    break;
+                case SSTRecord.sid:
+                    sharedStrings = (SSTRecord) record;
+                    break;
+                case ExtendedFormatRecord.sid:
+                    extendedFormats.add((ExtendedFormatRecord) record);
+                    break;
+                case DateWindow1904Record.sid:
+                    date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+                    break;
+                case BOFRecord.sid:
+                    // Charts embedded in a sheet are nested substreams with their own BOF and EOF
+                    substreamDepth++;
+                    if (substreamDepth == 1 && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                        inSheet = true;
+                        if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                            startSheet();
+                        }
+                    }
+                    break;
+                case EOFRecord.sid:
+                    substreamDepth--;
+                    if (substreamDepth == 0 && inSheet) {
+                        inSheet = false;
+                        finishSheet();
+                    }
+                    break;
+                case RowRecord.sid:
+                    if (builder != null) {
+                        announcedRows.set(((RowRecord) record).getRowNumber());
+                    }
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    if (wantsCell(number)) {
+                        addCell(number, numericValue(number, number.getValue()));
+                    }
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord label = (LabelSSTRecord) record;
+                    if (wantsCell(label)) {
+                        addCell(label, converter.intern(sharedStrings.getString(label.getSSTIndex()).getString()));
+                    }
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord oldLabel = (LabelRecord) record;
+                    if (wantsCell(oldLabel)) {
+                        addCell(oldLabel, converter.intern(oldLabel.getValue()));
+                    }
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord) record;
+                    if (wantsCell(boolErr)) {
+                        addCell(boolErr, boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()) : "ERROR");
+                    }
+                    break;
+                case BlankRecord.sid:
+                    addCell((BlankRecord) record, "");
+                    break;
+                case MulBlankRecord.sid:
+                    // Runs of blank cells are not split into blank records by the event model
+                    MulBlankRecord blanks = (MulBlankRecord) record;
+                    for (int column = blanks.getFirstColumn(); column <= blanks.getLastColumn(); column++) {
+                        addCell(blanks.getRow(), column, "");
+                    }
+                    break;
+                case FormulaRecord.sid:
+                    FormulaRecord formula = (FormulaRecord) record;
+                    if (wantsCell(formula)) {
+                        addFormula(formula);
+                    }
+                    break;
+                case MergeCellsRecord.sid:
+                    MergeCellsRecord mergeCells = (MergeCellsRecord) record;
+                    if (builder != null && fillMergedCells) {
+                        for (int i = 0; i < mergeCells.getNumAreas(); i++) {
+                            mergedRegions.add(mergeCells.getAreaAt(i));
+                        }
+                    }
+                    break;
+                case StringRecord.sid:
+                    if (pendingFormula != null) {
+                        addCell(pendingFormula, converter.intern(((StringRecord) record).getString()));
+                        pendingFormula = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void startSheet() {
+            // The workbook globals are complete once the first sheet starts
+            if (orderedSheets == null) {
+                orderedSheets = BoundSheetRecord.orderByBofPosition(boundSheets);
+                converter = new CellValueConverter(date1904, this::isDateFormat);
+            }
+
+            // Sheets outside the requested range are skipped without converting their cells
+            if (!request.includesSheet(sheetIndex)) {
+                return;
+            }
+
+            // Get sheet name or use default if blank
+            String sheetName = sheetIndex < orderedSheets.length ? orderedSheets[sheetIndex].getSheetname() : null;
+            if (sheetName == null || sheetName.trim().isEmpty()) {
+                sheetName = "Sheet " + (sheetIndex + 1);
+            }
+
+            sheetTimer = StageTimer.start(report, "excel sheet", sheetIndex, sheetName);
+            builder = new SheetTableBuilder("Excel - " + sheetName + " (" + file.getName() + ")", fillMergedCells,
+                    request);
+            announcedRows.clear();
+            mergedRegions.clear();
+            currentRow = -1;
+            pendingFormula = null;
+        }
+
+        private void finishSheet() {
+            // Chart sheets and macro sheets only take up a sheet index
+            if (builder != null) {
+                if (currentRow >= 0) {
+                    builder.endRow();
+                }
+                addEmptyRows(announcedRows.length());
+                if (fillMergedCells) {
+                    builder.fillMergedCells(new MergedRegionIndex(mergedRegions));
+                }
+                TableData table = builder.getTable();
+                sheetTimer.stop();
+
+                if (builder.getRowCount() > 0 && table.getRowCount() > 0) {
+                    tables.add(table);
+                }
+                builder = null;
+            }
+            sheetIndex++;
+        }
+
+        /**
+         * Check whether the value of a cell has to be converted; cells outside the requested
+         * sheets and columns are skipped
+         */
+        private boolean wantsCell(CellValueRecordInterface cell) {
+            return builder != null && builder.wantsCell(cell.getColumn());
+        }
+
+        /**
+         * Add a cell to the current sheet, finishing the rows above it
+         */
+        private void addCell(CellValueRecordInterface cell, String value) {
+            addCell(cell.getRow(), cell.getColumn(), value);
+        }
+
+        private void addCell(int row, int column, String value) {
+            if (builder == null) {
+                return;
+            }
+            if (row != currentRow) {
+                if (currentRow >= 0) {
+                    builder.endRow();
+                }
+                addEmptyRows(row);
+                announcedRows.clear(row);
+                currentRow = row;
+                builder.startRow(currentRow);
+            }
+            builder.addCell(column, value);
+        }
+
+        /**
+         * Hand the announced rows above a row to the builder; their cells, if any, were added before
+         */
+        private void addEmptyRows(int toRow) {
+            for (int row = announcedRows.nextSetBit(0); row >= 0 && row < toRow; row = announcedRows.nextSetBit(row + 1)) {
+                announcedRows.clear(row);
+                if (row > currentRow) {
+                    builder.startRow(row);
+                    builder.endRow();
+                }
+            }
+        }
+
+        private void addFormula(FormulaRecord formula) {
+            // Cached result of the formula, the error code for errors
+            CellType resultType = formula.getCachedResultTypeEnum();
+            if (resultType == CellType.NUMERIC) {
+                addCell(formula, numericValue(formula, formula.getValue()));
+            } else if (resultType == CellType.STRING) {
+                if (formula.hasCachedResultString()) {
+                    pendingFormula = formula;
+                } else {
+                    addCell(formula, "");
+                }
+            } else if (resultType == CellType.BOOLEAN) {
+                addCell(formula, String.valueOf(formula.getCachedBooleanValue()));
+            } else if (resultType == CellType.ERROR && FormulaError.isValidCode(formula.getCachedErrorValue())) {
+                addCell(formula, FormulaError.forInt(formula.getCachedErrorValue()).getString());
+            } else {
+                addCell(formula, HSSFFormulaParser.toFormulaString(workbookListener.getStubHSSFWorkbook(),
+                        formula.getParsedExpression()));
+            }
+        }
+
+        /**
+         * Convert a numeric cell value to text
+         */
+        private String numericValue(CellValueRecordInterface cell, double value) {
+            return converter.numericValue(value, converter.isDateStyle(cell.getXFIndex() & 0xFFFF));
+        }
+
+        /**
+         * Check whether the extended format with an index has a date number format
+         */
+        private boolean isDateFormat(int styleIndex) {
+            if (styleIndex >= extendedFormats.size()) {
+                return false;
+            }
+            int formatIndex = extendedFormats.get(styleIndex).getFormatIndex();
+            return DateUtil.isADateFormat(formatIndex, formatListener.getFormatString(formatIndex));
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import model.ConversionReport;
+import model.TableData;
+import util.MergedRegionIndex;
+import util.StageTimer;
+
+/**
+ * Reads the sheets of an .xlsx workbook by parsing the sheet XML with SAX, so rows
+ * go into the tables while they are parsed and the workbook object model is never
+ * built. Heap use grows with the extracted cell text only, not with the XML beans
+ * of every cell. Cell values are converted like the object model path does:
+ * integral numbers without decimals, dates as yyyy-MM-dd and cached formula results.
+ * The merged regions are listed after the sheet data, so merged cells are filled
+ * once the sheet is parsed.
+ */
+class StreamingXlsxReader {
+
+    private final File file;
+    private final int parallelism;
+    private final boolean fillMergedCells;
+    private final ExtractionRequest request;
+    private final boolean debug;
+
+    // Read-only workbook parts shared by the threads reading the sheets
+    private ReadOnlySharedStringsTable sharedStrings;
+    private CellValueConverter converter;
+
+    /**
+     * @param file .xlsx file to read
+     * @param parallelism Number of threads reading sheets, 1 to read them one after another
+     * @param fillMergedCells Whether the cells covered by merged regions get the value of the region
+     * @param request Sheets, columns and rows to read
+     * @param debug Whether to print the number of sheets to the console
+     */
+    StreamingXlsxReader(File file, int parallelism, boolean fillMergedCells, ExtractionRequest request, boolean debug) {
+        this.file = file;
+        this.parallelism = parallelism;
+        this.fillMergedCells = fillMergedCells;
+        this.request = request;
+        this.debug = debug;
+    }
+
+    /**
+     * Read all sheets of the workbook. With more than one thread every extra thread opens
+     * its own copy of the package and takes the next sheet not read yet.
+     * @param report Report receiving the stage timings
+     * @return Table of every sheet with data rows, in workbook order
+     */
+    List<TableData> readSheets(ConversionReport report) throws IOException {
+        StageTimer loadTimer = StageTimer.start(report, "workbook load", -1);
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            converter = createConverter(reader.getStylesTable(), readDate1904(reader));
+            sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+
+            // Part and name of every sheet, in workbook order
+            List<PackagePartName> sheetParts = new ArrayList<>();
+            List<String> sheetNames = new ArrayList<>();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                sheetParts.add(sheets.getSheetPart().getPartName());
+                sheetNames.add(sheets.getSheetName());
+            }
+            loadTimer.stop();
+            if (debug) {
+                System.out.println("Excel workbook streamed. Number of sheets: " + sheetParts.size());
+            }
+
+            TableData[] sheetTables = new TableData[sheetParts.size()];
+
+            // Sheets outside the requested range are never parsed
+            int firstSheet = Math.min(request.getFirstSheet(), sheetParts.size());
+            int endSheet = Math.min(request.getEndSheet(), sheetParts.size());
+            AtomicInteger nextSheet = new AtomicInteger(firstSheet);
+            int workerCount = Math.min(parallelism, endSheet - firstSheet);
+            if (workerCount <= 1) {
+                readSheetRange(pkg, sheetParts, sheetNames, nextSheet, sheetTables, report);
+            } else {
+                readSheetsInParallel(pkg, workerCount, sheetParts, sheetNames, nextSheet, sheetTables, report);
+            }
+
+            List<TableData> tables = new ArrayList<>();
+            for (TableData table : sheetTables) {
+                if (table != null) {
+                    tables.add(table);
+                }
+            }
+            return tables;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Cannot read workbook " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the sheets with worker threads; the calling thread works on the package already open
+     */
+    private void readSheetsInParallel(OPCPackage pkg, int workerCount, List<PackagePartName> sheetParts,
+                                      List<String> sheetNames, AtomicInteger nextSheet, TableData[] sheetTables,
+                                      ConversionReport report) throws IOException, SAXException, ParserConfigurationException {
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount - 1);
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 1; i < workerCount; i++) {
+                workers.add(executor.submit(() -> {
+                    try (OPCPackage workerPkg = OPCPackage.open(file, PackageAccess.READ)) {
+                        readSheetRange(workerPkg, sheetParts, sheetNames, nextSheet, sheetTables, report);
+                    }
+                    return null;
+                }));
+            }
+
+            readSheetRange(pkg, sheetParts, sheetNames, nextSheet, sheetTables, report);
+
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Excel extraction was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error reading Excel sheet: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read sheets until no sheet is left, taking the next sheet index from a shared counter
+     * @param pkg Package owned by the calling thread
+     * @param sheetParts Part name of every sheet
+     * @param sheetNames Name of every sheet
+     * @param nextSheet Counter of the next sheet to read
+     * @param sheetTables Receives the table of each sheet with data rows
+     * @param report Report receiving the stage timings
+     */
+    private void readSheetRange(OPCPackage pkg, List<PackagePartName> sheetParts, List<String> sheetNames,
+                                AtomicInteger nextSheet, TableData[] sheetTables, ConversionReport report)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = XMLHelper.newXMLReader();
+        int sheetIndex;
+        int endSheet = Math.min(request.getEndSheet(), sheetTables.length);
+        while ((sheetIndex = nextSheet.getAndIncrement()) < endSheet) {
+            // Get sheet name or use default if blank
+            String sheetName = sheetNames.get(sheetIndex);
+            if (sheetName == null || sheetName.trim().isEmpty()) {
+                sheetName = "Sheet " + (sheetIndex + 1);
+            }
+
+            StageTimer sheetTimer = StageTimer.start(report, "excel sheet", sheetIndex, sheetName);
+            SheetTableBuilder builder = new SheetTableBuilder("Excel - " + sheetName + " (" + file.getName() + ")",
+                    fillMergedCells, request);
+            SheetHandler handler = new SheetHandler(builder);
+            try (InputStream sheetData = pkg.getPart(sheetParts.get(sheetIndex)).getInputStream()) {
+                xmlReader.setContentHandler(handler);
+                xmlReader.parse(new InputSource(sheetData));
+            }
+            if (fillMergedCells) {
+                builder.fillMergedCells(new MergedRegionIndex(handler.mergedRegions));
+            }
+            TableData table = builder.getTable();
+            sheetTimer.stop();
+
+            if (builder.getRowCount() > 0 && table.getRowCount() > 0) {
+                sheetTables[sheetIndex] = table;
+            }
+        }
+    }
+
+    /**
+     * Create the cell value converter of the workbook and decide the date styles up front,
+     * so the threads reading the sheets never touch the styles table
+     * @param styles Styles of the workbook, may be null
+     * @param date1904 true if the workbook counts dates from 1904
+     * @return Converter of the cell values
+     */
+    private static CellValueConverter createConverter(StylesTable styles, boolean date1904) {
+        int styleCount = styles != null ? styles.getNumCellStyles() : 0;
+        CellValueConverter converter = new CellValueConverter(date1904, styleIndex -> {
+            XSSFCellStyle style = styleIndex < styleCount ? styles.getStyleAt(styleIndex) : null;
+            return style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+        });
+        for (int i = 0; i < styleCount; i++) {
+            converter.isDateStyle(i);
+        }
+        return converter;
+    }
+
+    /**
+     * Read whether the workbook counts dates from 1904 instead of 1900
+     */
+    private static boolean readDate1904(XSSFReader reader) throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        boolean[] date1904 = new boolean[1];
+        XMLReader xmlReader = XMLHelper.newXMLReader();
+        xmlReader.setContentHandler(new DefaultHandler() {
+            private boolean found;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("workbookPr".equals(localName) && !found) {
+                    found = true;
+                    String value = attributes.getValue("date1904");
+                    date1904[0] = "1".equals(value) || "true".equals(value);
+                }
+            }
+        });
+        try (InputStream workbookData = reader.getWorkbookData()) {
+            xmlReader.parse(new InputSource(workbookData));
+        }
+        return date1904[0];
+    }
+
+
+    /**
+     * SAX handler of a worksheet that feeds the rows of the sheet data into a table builder
+     */
+    private class SheetHandler extends DefaultHandler {
+        private final SheetTableBuilder builder;
+
+        // Merged regions of the sheet, only collected when merged cells are filled
+        private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+
+        private int rowIndex = -1;
+        private int column;
+        private String type;
+        private int styleIndex;
+        private boolean formula;
+        private boolean hasValue;
+        private boolean hasInlineString;
+
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formulaText = new StringBuilder();
+        private final StringBuilder inlineString = new StringBuilder();
+
+        // Element whose text is collected: v, f or t of an inline string outside phonetic runs
+        private StringBuilder target;
+        private boolean inPhoneticRun;
+
+        SheetHandler(SheetTableBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String rowNumber = attributes.getValue("r");
+                    rowIndex = rowNumber != null ? Integer.parseInt(rowNumber) - 1 : rowIndex + 1;
+                    builder.startRow(rowIndex);
+                    column = -1;
+                    break;
+                case "c":
+                    String reference = attributes.getValue("r");
+                    column = reference != null ? columnIndex(reference) : column + 1;
+                    type = attributes.getValue("t");
+                    String style = attributes.getValue("s");
+                    styleIndex = style != null ? Integer.parseInt(style) : 0;
+                    formula = false;
+                    hasValue = false;
+                    hasInlineString = false;
+                    value.setLength(0);
+                    formulaText.setLength(0);
+                    inlineString.setLength(0);
+                    break;
+                case "v":
+                    hasValue = true;
+                    target = value;
+                    break;
+                case "f":
+                    formula = true;
+                    target = formulaText;
+                    break;
+                case "is":
+                    hasInlineString = true;
+                    break;
+                case "rPh":
+                    inPhoneticRun = true;
+                    break;
+                case "t":
+                    if (hasInlineString && !inPhoneticRun) {
+                        target = inlineString;
+                    }
+                    break;
+                case "mergeCell":
+                    String range = attributes.getValue("ref");
+                    if (fillMergedCells && range != null) {
+                        mergedRegions.add(CellRangeAddress.valueOf(range));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "f":
+                case "t":
+                    target = null;
+                    break;
+                case "rPh":
+                    inPhoneticRun = false;
+                    break;
+                case "c":
+                    // Cells of columns that are not requested are never converted
+                    if (builder.wantsCell(column)) {
+                        builder.addCell(column, cellValue());
+                    }
+                    break;
+                case "row":
+                    builder.endRow();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (target != null) {
+                target.append(ch, start, length);
+            }
+        }
+
+        /**
+         * Convert a numeric cell value to text
+         * @param text Value as stored in the sheet, empty if the cell has none
+         * @param styleIndex Index of the cell style
+         */
+        private String numericValue(String text, int styleIndex) {
+            double value = text.isEmpty() ? 0.0 : Double.parseDouble(text);
+            return converter.numericValue(value, converter.isDateStyle(styleIndex));
+        }
+
+        /**
+         * Read the zero-based column index from the letters of a cell reference such as "AB12"
+         */
+        private int columnIndex(String reference) {
+            int index = 0;
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    index = index * 26 + (c - 'A' + 1);
+                } else if (c != '$') {
+                    break;
+                }
+            }
+            return index - 1;
+        }
+
+        /**
+         * Convert the current cell to text
+         */
+        private String cellValue() {
+            String text = value.toString();
+            if (formula) {
+                // Cached result of the formula; errors are cached as their code, e.g. #DIV/0!,
+                // because the formula text of a shared formula is only stored on its first cell
+                if ("str".equals(type) || "s".equals(type) || "inlineStr".equals(type)) {
+                    return decode(text);
+                } else if ("b".equals(type)) {
+                    return String.valueOf("1".equals(text));
+                } else if ("e".equals(type)) {
+                    return hasValue ? converter.intern(text) : formulaText.toString();
+                }
+                return numericValue(text, styleIndex);
+            }
+
+            if (type == null || "n".equals(type)) {
+                return hasValue ? numericValue(text, styleIndex) : "";
+            }
+            switch (type) {
+                case "s":
+                    return hasValue ? converter.intern(sharedStrings.getItemAt(Integer.parseInt(text.trim())).getString()) : "";
+                case "inlineStr":
+                    return decode(hasInlineString ? inlineString.toString() : text);
+                case "b":
+                    return String.valueOf("1".equals(text));
+                case "e":
+                    return "ERROR";
+                default:
+                    return decode(text);
+            }
+        }
+
+        /**
+         * Decode the _xHHHH_ escapes of characters that cannot be stored in XML
+         */
+        private String decode(String text) {
+            return converter.intern(text.contains("_x") ? new XSSFRichTextString(text).getString() : text);
+        }
+    }
+}
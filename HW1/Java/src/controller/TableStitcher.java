@@ -0,0 +1,119 @@
+package controller;
+
+import model.TableData;
+
+/**
+ * Joins tables that continue across pages into one table while the pages go by
+ * in order. A page continues the open table if its table has the same number of
+ * columns and either repeats the headers or has the same column boundaries; in
+ * the latter case its first row is data, not a header. Only the open table is
+ * kept; it is handed out as soon as a page does not continue it. A table that
+ * continues is copied into a builder once, and later pages only append to it.
+ */
+class TableStitcher {
+
+    // Largest difference of column boundaries on pages of the same table
+    private static final float BOUNDARY_TOLERANCE = 5f;
+
+    private final boolean enabled;
+
+    private TableData openTable;
+    private TableData.Builder openBuilder;
+    private String openName;
+    private float[] openBoundaries;
+    private int firstPage;
+    private int lastPage;
+
+    /**
+     * @param enabled false to hand out every page table on its own
+     */
+    TableStitcher(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Add the table of the next page
+     * @param page Extraction result of a page with a table
+     * @return Table closed because the page does not continue it, or null
+     */
+    TableData add(PageExtraction page) {
+        TableData table = page.getTable();
+        if (!enabled) {
+            return table;
+        }
+        if (openTable != null && lastPage == page.getPageIndex() - 1) {
+            if (table.getHeaders().equals(openTable.getHeaders())) {
+                // Repeated header, only the rows are new
+                openBuilder().addRows(table);
+                lastPage = page.getPageIndex();
+                return null;
+            }
+            if (sameColumns(page)) {
+                // No repeated header, the first row is a data row
+                openBuilder().addRow(page.getFirstRow()).addRows(table);
+                lastPage = page.getPageIndex();
+                return null;
+            }
+        }
+
+        TableData closed = finish();
+        openTable = table;
+        openName = table.getTableName();
+        openBoundaries = page.getColumnBoundaries();
+        firstPage = page.getPageIndex();
+        lastPage = page.getPageIndex();
+        return closed;
+    }
+
+    /**
+     * Close the open table, e.g. because a page without a table interrupts it
+     * @return Table that was open, or null
+     */
+    TableData finish() {
+        TableData closed = openBuilder != null ? openBuilder.build().withTableName(stitchedName()) : openTable;
+        openTable = null;
+        openBuilder = null;
+        openName = null;
+        openBoundaries = null;
+        return closed;
+    }
+
+    /**
+     * @return Builder of the open table, created with the rows of its first page when a page continues it
+     */
+    private TableData.Builder openBuilder() {
+        if (openBuilder == null) {
+            openBuilder = TableData.builder(openName).addHeaders(openTable.getHeaders()).addRows(openTable);
+        }
+        return openBuilder;
+    }
+
+    /**
+     * @return Name of the open table covering all of its pages
+     */
+    private String stitchedName() {
+        // "Table from Page 3" becomes "Table from Pages 3-5"
+        String firstPageName = "Page " + (firstPage + 1);
+        String pagesName = "Pages " + (firstPage + 1) + "-" + (lastPage + 1);
+        return openName.endsWith(firstPageName)
+                ? openName.substring(0, openName.length() - firstPageName.length()) + pagesName
+                : openName + " (" + pagesName + ")";
+    }
+
+    /**
+     * Check if a page table has the same column count and boundaries as the open table
+     */
+    private boolean sameColumns(PageExtraction page) {
+        float[] boundaries = page.getColumnBoundaries();
+        if (boundaries == null || openBoundaries == null || boundaries.length != openBoundaries.length
+                || page.getFirstRow() == null || page.getTable().getHeaders().size() != openTable.getHeaders().size()) {
+            return false;
+        }
+        for (int i = 0; i < boundaries.length; i++) {
+            if (Math.abs(boundaries[i] - openBoundaries[i]) > BOUNDARY_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.text.TextPosition;
+
+import model.PageLayout;
+import model.TableData;
+
+/**
+ * Fast table extraction that splits every text line of a page into cells at gaps
+ * of at least two space widths, without detecting a grid. The first line with two
+ * or more cells gives the headers and the following lines with two or more cells
+ * the rows. Lines split into a different number of cells than the headers make the
+ * result inconsistent, which tells that the accurate extraction should be used.
+ */
+class TextColumnExtractor {
+
+    // Smallest share of the lines below the headers that must have as many cells as the headers
+    private static final float MIN_CONSISTENT_SHARE = 0.8f;
+
+    private final PageLayout layout;
+
+    private int checkedLines;
+    private int consistentLines;
+
+    /**
+     * @param layout Layout of the page to extract
+     */
+    TextColumnExtractor(PageLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Extract the table of the page
+     * @param pageName Name of the page for table naming
+     * @return Extraction result with the table and the start of each header cell, or null if no line has two cells
+     */
+    PageExtraction extract(String pageName) {
+        TextLineCursor cursor = new TextLineCursor(layout);
+
+        TableData.Builder tableData = null;
+        float[] columnStarts = null;
+        List<String> firstRow = null;
+        List<String> cells = new ArrayList<>();
+        List<Float> cellStarts = new ArrayList<>();
+        for (int line = 0; line < cursor.getLineCount(); line++) {
+            splitLine(cursor, line, cells, cellStarts);
+
+            if (tableData != null) {
+                checkedLines++;
+                if (cells.size() == tableData.getHeaders().size()) {
+                    consistentLines++;
+                }
+            }
+            if (cells.size() < 2) {
+                continue;
+            }
+
+            if (tableData == null) {
+                // First line with columns is the header row
+                tableData = TableData.builder("Table from " + pageName);
+                for (String cell : cells) {
+                    tableData.addHeader(cell);
+                }
+                firstRow = new ArrayList<>(cells);
+                columnStarts = new float[cellStarts.size()];
+                for (int i = 0; i < columnStarts.length; i++) {
+                    columnStarts[i] = cellStarts.get(i);
+                }
+            } else {
+                // Pad or cut the row to the number of headers
+                List<String> row = new ArrayList<>();
+                for (int i = 0; i < tableData.getHeaders().size(); i++) {
+                    row.add(i < cells.size() ? cells.get(i) : "");
+                }
+                tableData.addRow(row);
+            }
+        }
+
+        if (tableData == null || tableData.getRowCount() == 0) {
+            return null;
+        }
+        return new PageExtraction(layout.getPageIndex(), tableData.build(), layout.getText(), false, columnStarts,
+                firstRow);
+    }
+
+    /**
+     * Check the result of {@link #extract(String)}
+     * @return true if most lines below the headers have as many cells as the headers
+     */
+    boolean isConsistent() {
+        return checkedLines > 0 && consistentLines >= MIN_CONSISTENT_SHARE * checkedLines;
+    }
+
+    /**
+     * Split the glyphs of a line into cells
+     * @param cursor Cursor over the lines of the page
+     * @param line Index of the line
+     * @param cells Receives the trimmed text of each cell
+     * @param cellStarts Receives the x-coordinate where each cell starts
+     */
+    private static void splitLine(TextLineCursor cursor, int line, List<String> cells, List<Float> cellStarts) {
+        cells.clear();
+        cellStarts.clear();
+
+        StringBuilder cell = new StringBuilder();
+        cursor.startLine(line);
+        while (cursor.next()) {
+            TextPosition position = cursor.glyph();
+            if (cursor.isAfterColumnGap()) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else if (cell.length() > 0 && cursor.isWordStart()) {
+                cell.append(' ');
+            }
+            if (cell.length() == 0) {
+                cellStarts.add(position.getX());
+            }
+            cell.append(position.getUnicode());
+        }
+        if (cell.length() > 0) {
+            cells.add(cell.toString());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package controller;
+
+import java.util.List;
+
+import org.apache.pdfbox.text.TextPosition;
+
+import model.PageLayout;
+
+/**
+ * Walks the glyphs of the text lines of a page layout, skipping space glyphs, and
+ * tells for every glyph whether it starts a word and whether a column gap lies
+ * before it. A word starts where the text stripper split words or after a space
+ * glyph; a column gap is at least two space widths wide. Lines must be walked in
+ * order, since the word starts are passed only once.
+ */
+class TextLineCursor {
+
+    // Gap between glyphs, in widths of a space, that separates columns
+    private static final float COLUMN_GAP_SPACES = 2f;
+
+    private final List<TextPosition> positions;
+    private final int[] lineStarts;
+    private final int[] wordStarts;
+
+    // Word start of the text stripper not passed yet
+    private int nextWord;
+
+    private int index;
+    private int lineEnd;
+    private TextPosition glyph;
+    private boolean wordStart;
+    private boolean columnGap;
+    private float previousEnd;
+
+    /**
+     * @param layout Layout of the page to walk
+     */
+    TextLineCursor(PageLayout layout) {
+        this.positions = layout.getTextPositions();
+        this.lineStarts = layout.getLineStarts();
+        this.wordStarts = layout.getWordStarts();
+    }
+
+    int getLineCount() {
+        return lineStarts.length;
+    }
+
+    /**
+     * Move before the first glyph of a line
+     * @param line Line index, not lower than the line walked before
+     */
+    void startLine(int line) {
+        index = lineStarts[line];
+        lineEnd = line + 1 < lineStarts.length ? lineStarts[line + 1] : positions.size();
+        glyph = null;
+        previousEnd = Float.NaN;
+    }
+
+    /**
+     * Move to the next glyph of the line that is not a space
+     * @return false if the line has no more glyphs
+     */
+    boolean next() {
+        if (glyph != null) {
+            previousEnd = glyph.getX() + glyph.getWidth();
+        }
+        boolean afterSpace = false;
+        for (; index < lineEnd; index++) {
+            boolean strippedWordStart = false;
+            while (nextWord < wordStarts.length && wordStarts[nextWord] <= index) {
+                strippedWordStart |= wordStarts[nextWord] == index;
+                nextWord++;
+            }
+
+            TextPosition position = positions.get(index);
+            if (position.getUnicode().trim().isEmpty()) {
+                afterSpace = true;
+                continue;
+            }
+            glyph = position;
+            wordStart = strippedWordStart || afterSpace;
+            columnGap = !Float.isNaN(previousEnd) && position.getX() - previousEnd >= COLUMN_GAP_SPACES * spaceWidth(position);
+            index++;
+            return true;
+        }
+        glyph = null;
+        return false;
+    }
+
+    /**
+     * @return Current glyph
+     */
+    TextPosition glyph() {
+        return glyph;
+    }
+
+    /**
+     * @return true if the current glyph starts a word
+     */
+    boolean isWordStart() {
+        return wordStart;
+    }
+
+    /**
+     * @return true if a column gap lies between the previous glyph of the line and the current one
+     */
+    boolean isAfterColumnGap() {
+        return columnGap;
+    }
+
+    /**
+     * Width of a space in the font of a glyph, estimated from the font size if the font does not tell
+     */
+    private static float spaceWidth(TextPosition position) {
+        float width = position.getWidthOfSpace();
+        if (width > 0 && !Float.isNaN(width) && !Float.isInfinite(width)) {
+            return width;
+        }
+        return position.getFontSizeInPt() * 0.25f;
+    }
+}
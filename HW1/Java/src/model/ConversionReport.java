@@ -0,0 +1,221 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Time and memory spent in each stage of one file conversion, in total and for
+ * each page or sheet the stage ran on, and counts of events during the conversion.
+ * Stages and events can be recorded from several worker threads at once.
+ */
+public class ConversionReport {
+    private final String fileName;
+    private final Map<String, StageTotals> stages = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    // Number of pages or sheets of a stage listed by toString, slowest first
+    private static final int SLOWEST_PARTS_SHOWN = 5;
+
+    public ConversionReport(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Add one run of a stage over the whole file to the report
+     * @param stage Name of the stage
+     * @param nanos Time spent in nanoseconds
+     * @param allocatedBytes Bytes allocated by the thread, or -1 if unknown
+     */
+    public void record(String stage, long nanos, long allocatedBytes) {
+        record(stage, -1, null, nanos, allocatedBytes);
+    }
+
+    /**
+     * Add one run of a stage to the report
+     * @param stage Name of the stage
+     * @param index Index of the page or sheet, -1 for the whole file
+     * @param label Name of the page or sheet, or null
+     * @param nanos Time spent in nanoseconds
+     * @param allocatedBytes Bytes allocated by the thread, or -1 if unknown
+     */
+    public synchronized void record(String stage, int index, String label, long nanos, long allocatedBytes) {
+        StageTotals totals = stages.get(stage);
+        if (totals == null) {
+            totals = new StageTotals(stage, -1, null);
+            stages.put(stage, totals);
+        }
+        totals.add(nanos, allocatedBytes);
+
+        if (index >= 0) {
+            StageTotals part = totals.parts.get(index);
+            if (part == null) {
+                part = new StageTotals(stage, index, label);
+                totals.parts.put(index, part);
+            }
+            part.add(nanos, allocatedBytes);
+        }
+    }
+
+    /**
+     * Count one occurrence of an event, e.g. a page that needed a slower extraction
+     * @param counter Name of the event
+     */
+    public synchronized void incrementCounter(String counter) {
+        counters.merge(counter, 1L, Long::sum);
+    }
+
+    /**
+     * @param counter Name of the event
+     * @return Number of times the event was counted
+     */
+    public synchronized long getCounter(String counter) {
+        return counters.getOrDefault(counter, 0L);
+    }
+
+    /**
+     * @return Count of each event in the order the events first occurred
+     */
+    public synchronized Map<String, Long> getCounters() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(counters));
+    }
+
+    /**
+     * @return Totals of each stage in the order the stages first ran
+     */
+    public synchronized List<StageTotals> getStages() {
+        List<StageTotals> copy = new ArrayList<>();
+        for (StageTotals totals : stages.values()) {
+            copy.add(new StageTotals(totals));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("Conversion report for ").append(fileName).append('\n');
+        report.append(String.format("  %-24s %6s %12s %14s%n", "Stage", "Runs", "Time (ms)", "Allocated (KB)"));
+        for (StageTotals totals : stages.values()) {
+            appendLine(report, totals.stage, totals);
+
+            // The slowest pages or sheets of the stage
+            List<StageTotals> parts = new ArrayList<>(totals.parts.values());
+            parts.sort(Comparator.comparingLong(StageTotals::getNanos).reversed());
+            for (int i = 0; i < parts.size() && i < SLOWEST_PARTS_SHOWN; i++) {
+                appendLine(report, "  " + parts.get(i).getName(), parts.get(i));
+            }
+            if (parts.size() > SLOWEST_PARTS_SHOWN) {
+                report.append("    ... ").append(parts.size() - SLOWEST_PARTS_SHOWN).append(" more\n");
+            }
+        }
+        if (!counters.isEmpty()) {
+            report.append(String.format("  %-24s %6s%n", "Event", "Count"));
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                report.append(String.format("  %-24s %6d%n", counter.getKey(), counter.getValue()));
+            }
+        }
+        return report.toString();
+    }
+
+    private static void appendLine(StringBuilder report, String name, StageTotals totals) {
+        report.append(String.format("  %-24s %6d %12.1f %14d%n", name, totals.count,
+                totals.nanos / 1_000_000.0, totals.allocatedBytes / 1024));
+    }
+
+    /**
+     * Accumulated time and allocation of one stage, or of one stage on one page or sheet
+     */
+    public static class StageTotals {
+        private final String stage;
+        private final int index;
+        private final String label;
+        private int count;
+        private long nanos;
+        private long allocatedBytes;
+
+        // Totals of each page or sheet, by index
+        private final Map<Integer, StageTotals> parts = new TreeMap<>();
+
+        private StageTotals(String stage, int index, String label) {
+            this.stage = stage;
+            this.index = index;
+            this.label = label;
+        }
+
+        private StageTotals(StageTotals other) {
+            this.stage = other.stage;
+            this.index = other.index;
+            this.label = other.label;
+            this.count = other.count;
+            this.nanos = other.nanos;
+            this.allocatedBytes = other.allocatedBytes;
+            for (StageTotals part : other.parts.values()) {
+                this.parts.put(part.index, new StageTotals(part));
+            }
+        }
+
+        private void add(long nanos, long allocatedBytes) {
+            count++;
+            this.nanos += nanos;
+            if (allocatedBytes >= 0) {
+                this.allocatedBytes += allocatedBytes;
+            }
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        /**
+         * @return Index of the page or sheet, -1 for the totals of the whole stage
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return Name of the page or sheet, or null if none was given
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return Number of the page or sheet counted from 1 and its name, e.g. "#3 Fall 2024"
+         */
+        public String getName() {
+            if (index < 0) {
+                return stage;
+            }
+            return "#" + (index + 1) + (label != null ? " " + label : "");
+        }
+
+        /**
+         * @return Totals of each page or sheet the stage ran on, in index order
+         */
+        public List<StageTotals> getParts() {
+            return Collections.unmodifiableList(new ArrayList<>(parts.values()));
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tables extracted by one conversion of a file, together with its stage timings.
+ * Every conversion returns its own result, so results of conversions running at
+ * the same time never share state.
+ */
+public final class ConversionResult {
+    private final String fileName;
+    private final List<TableData> tables;
+    private final ConversionReport report;
+    private final boolean fromCache;
+    private final boolean successful;
+
+    /**
+     * @param fileName Name of the converted file
+     * @param tables Extracted tables, copied
+     * @param report Stage timings of the conversion
+     * @param fromCache true if the tables were read from the result cache
+     */
+    public ConversionResult(String fileName, List<TableData> tables, ConversionReport report, boolean fromCache) {
+        this(fileName, tables, report, fromCache, true);
+    }
+
+    /**
+     * @param fileName Name of the converted file
+     * @param tables Extracted tables, copied, or the table describing the error
+     * @param report Stage timings of the conversion
+     * @param fromCache true if the tables were read from the result cache
+     * @param successful false if the file was invalid or could not be read
+     */
+    public ConversionResult(String fileName, List<TableData> tables, ConversionReport report, boolean fromCache,
+                            boolean successful) {
+        this.fileName = fileName;
+        this.tables = Collections.unmodifiableList(new ArrayList<>(tables));
+        this.report = report;
+        this.fromCache = fromCache;
+        this.successful = successful;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return Unmodifiable list of the extracted tables
+     */
+    public List<TableData> getTables() {
+        return tables;
+    }
+
+    public ConversionReport getReport() {
+        return report;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * @return false if the tables only describe why the file could not be converted
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * @return Total number of cells of the tables, counting the cells every row actually has
+     */
+    public long getCellCount() {
+        long cells = 0;
+        for (TableData table : tables) {
+            for (int row = 0; row < table.getRowCount(); row++) {
+                cells += table.getRowWidth(row);
+            }
+        }
+        return cells;
+    }
+}
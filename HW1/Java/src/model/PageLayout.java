@@ -0,0 +1,95 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.text.TextPosition;
+
+/**
+ * Layout of a single PDF page collected in one content stream pass.
+ * Line detection, grid extraction and the text fallback all read from
+ * this model instead of parsing the page again.
+ */
+public class PageLayout {
+    private final int pageIndex;
+    private final float pageWidth;
+    private final float pageHeight;
+    private final List<TextPosition> glyphs;
+    private final List<TextPosition> textPositions;
+    private final int[] wordStarts;
+    private final int[] lineStarts;
+    private final String text;
+
+    public PageLayout(int pageIndex, float pageWidth, float pageHeight,
+                      List<TextPosition> glyphs, List<TextPosition> textPositions,
+                      int[] wordStarts, int[] lineStarts, String text) {
+        this.pageIndex = pageIndex;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.glyphs = Collections.unmodifiableList(glyphs);
+        this.textPositions = Collections.unmodifiableList(textPositions);
+        this.wordStarts = wordStarts;
+        this.lineStarts = lineStarts;
+        this.text = text;
+    }
+
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    public String getPageName() {
+        return "Page " + (pageIndex + 1);
+    }
+
+    public float getPageWidth() {
+        return pageWidth;
+    }
+
+    public float getPageHeight() {
+        return pageHeight;
+    }
+
+    /**
+     * Glyphs of the page in content stream order, after duplicate
+     * suppression and diacritic merging
+     * @return List of glyph positions
+     */
+    public List<TextPosition> getGlyphs() {
+        return glyphs;
+    }
+
+    /**
+     * Glyphs of the page in the order the text stripper wrote them
+     * (sorted by position)
+     * @return List of glyph positions in reading order
+     */
+    public List<TextPosition> getTextPositions() {
+        return textPositions;
+    }
+
+    /**
+     * Indexes into {@link #getTextPositions()} where the words written by the
+     * text stripper begin, ascending
+     * @return Start index of each word
+     */
+    public int[] getWordStarts() {
+        return wordStarts.clone();
+    }
+
+    /**
+     * Indexes into {@link #getTextPositions()} where the text lines begin, ascending.
+     * Every line start is also a word start.
+     * @return Start index of each line
+     */
+    public int[] getLineStarts() {
+        return lineStarts.clone();
+    }
+
+    /**
+     * Plain text of the page, sorted by position
+     * @return Page text
+     */
+    public String getText() {
+        return text;
+    }
+}
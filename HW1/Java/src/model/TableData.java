@@ -1,44 +1,294 @@
 package model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
-public class TableData {
-    private String tableName;
-    private List<String> headers;
-    private List<List<String>> rows;
-    
-    public TableData(String tableName) {
+/**
+ * Immutable table stored column by column. Every cell is a code into a dictionary
+ * of the distinct values of the table, so a value repeated in thousands of rows,
+ * such as a day name or a course code, is stored once plus an int per cell. Rows
+ * are read through views created on access. Tables are built with a {@link Builder}.
+ */
+public final class TableData {
+    // Code of the cells beyond the end of a row that is shorter than the widest row
+    private static final int ABSENT = -1;
+
+    private final String tableName;
+    private final String[] headers;
+    private final String[] dictionary;
+    private final int[][] columns;
+    private final int rowCount;
+
+    // Number of cells of each row, null if every row has a cell in every column
+    private final int[] rowWidths;
+
+    // Used by the builder and by TableDataReader, which decodes the arrays directly
+    TableData(String tableName, String[] headers, String[] dictionary, int[][] columns, int rowCount,
+              int[] rowWidths) {
         this.tableName = tableName;
-        headers = new ArrayList<>();
-        rows = new ArrayList<>();
-    }
-    
-    public void addHeader(String header) {
-        headers.add(header);
+        this.headers = headers;
+        this.dictionary = dictionary;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.rowWidths = rowWidths;
     }
-    
-    public void addRow(List<String> row) {
-        rows.add(row);
+
+    /**
+     * @param tableName Name of the table
+     * @return Builder of a table without headers and rows
+     */
+    public static Builder builder(String tableName) {
+        return new Builder(tableName);
     }
-    
+
     public String getTableName() {
         return tableName;
     }
-    
+
+    /**
+     * @return Unmodifiable list of the headers
+     */
     public List<String> getHeaders() {
-        return headers;
+        return Collections.unmodifiableList(Arrays.asList(headers));
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param row Row index
+     * @return Number of cells of the row, at most the number of columns
+     */
+    public int getRowWidth(int row) {
+        checkRow(row);
+        return rowWidths != null ? rowWidths[row] : columns.length;
+    }
+
+    /**
+     * @param row Row index
+     * @param column Column index
+     * @return Value of the cell, or an empty string if the row has no cell in the column
+     */
+    public String getValue(int row, int column) {
+        checkRow(row);
+        int code = column < columns.length ? columns[column][row] : ABSENT;
+        return code != ABSENT ? dictionary[code] : "";
+    }
+
+    /**
+     * @param row Row index
+     * @return Unmodifiable view of the cells of the row
+     */
+    public List<String> getRow(int row) {
+        checkRow(row);
+        return new RowView(row);
     }
-    
+
+    /**
+     * @return Unmodifiable view of all rows
+     */
     public List<List<String>> getRows() {
-        return rows;
+        return new RowsView();
     }
-    
-    public void setHeaders(List<String> headers) {
-        this.headers = headers;
+
+    /**
+     * @param tableName New name of the table
+     * @return Table with the same headers and rows under another name
+     */
+    public TableData withTableName(String tableName) {
+        return new TableData(tableName, headers, dictionary, columns, rowCount, rowWidths);
+    }
+
+    // The encoded form, read by TableDataWriter; the arrays must not be modified
+    String[] dictionary() {
+        return dictionary;
+    }
+
+    int[][] columns() {
+        return columns;
+    }
+
+    int[] rowWidths() {
+        return rowWidths;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
     }
-    
-    public void setRows(List<List<String>> rows) {
-        this.rows = rows;
+
+    private final class RowView extends AbstractList<String> implements RandomAccess {
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String get(int column) {
+            if (column < 0 || column >= size()) {
+                throw new IndexOutOfBoundsException("Column " + column + " of " + size());
+            }
+            return dictionary[columns[column][row]];
+        }
+
+        @Override
+        public int size() {
+            return rowWidths != null ? rowWidths[row] : columns.length;
+        }
+    }
+
+    private final class RowsView extends AbstractList<List<String>> implements RandomAccess {
+        @Override
+        public List<String> get(int row) {
+            return getRow(row);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    /**
+     * Builder of a table, encoding every row as it is added so that only the codes and
+     * the distinct values are held. A builder is used by a single thread.
+     */
+    public static final class Builder {
+        private final String tableName;
+        private final List<String> headers = new ArrayList<>();
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+
+        private int[][] columns = new int[0][];
+        private int[] rowWidths = new int[16];
+        private int rowCount;
+
+        private Builder(String tableName) {
+            this.tableName = tableName;
+        }
+
+        public Builder addHeader(String header) {
+            headers.add(header);
+            return this;
+        }
+
+        public Builder addHeaders(List<String> headers) {
+            this.headers.addAll(headers);
+            return this;
+        }
+
+        /**
+         * @return Unmodifiable view of the headers added so far
+         */
+        public List<String> getHeaders() {
+            return Collections.unmodifiableList(headers);
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Add a row; rows may have different numbers of cells
+         * @param row Cells of the row
+         * @return This builder
+         */
+        public Builder addRow(List<String> row) {
+            int index = startRow(row.size());
+            for (int column = 0; column < row.size(); column++) {
+                columns[column][index] = encode(row.get(column));
+            }
+            return this;
+        }
+
+        /**
+         * Add all rows of a table
+         * @param table Table whose rows are appended
+         * @return This builder
+         */
+        public Builder addRows(TableData table) {
+            // Translate the codes of the other table once per distinct value
+            int[] translated = new int[table.dictionary.length];
+            for (int code = 0; code < translated.length; code++) {
+                translated[code] = encode(table.dictionary[code]);
+            }
+
+            for (int row = 0; row < table.rowCount; row++) {
+                int width = table.getRowWidth(row);
+                int index = startRow(width);
+                for (int column = 0; column < width; column++) {
+                    columns[column][index] = translated[table.columns[column][row]];
+                }
+            }
+            return this;
+        }
+
+        public TableData build() {
+            int[][] builtColumns = new int[columns.length][];
+            for (int column = 0; column < columns.length; column++) {
+                builtColumns[column] = Arrays.copyOf(columns[column], rowCount);
+            }
+
+            int[] builtWidths = null;
+            for (int row = 0; row < rowCount; row++) {
+                if (rowWidths[row] != columns.length) {
+                    builtWidths = Arrays.copyOf(rowWidths, rowCount);
+                    break;
+                }
+            }
+
+            return new TableData(tableName, headers.toArray(new String[0]), dictionary.toArray(new String[0]),
+                    builtColumns, rowCount, builtWidths);
+        }
+
+        /**
+         * Make room for a row and add columns if it is wider than all rows before
+         * @return Index of the new row
+         */
+        private int startRow(int width) {
+            int capacity = rowWidths.length;
+            if (rowCount == capacity) {
+                capacity *= 2;
+                rowWidths = Arrays.copyOf(rowWidths, capacity);
+                for (int column = 0; column < columns.length; column++) {
+                    columns[column] = Arrays.copyOf(columns[column], capacity);
+                }
+            }
+            if (width > columns.length) {
+                int oldCount = columns.length;
+                columns = Arrays.copyOf(columns, width);
+                for (int column = oldCount; column < width; column++) {
+                    columns[column] = new int[capacity];
+                    Arrays.fill(columns[column], ABSENT);
+                }
+            }
+
+            // Cells beyond the width of the row stay absent
+            for (int column = width; column < columns.length; column++) {
+                columns[column][rowCount] = ABSENT;
+            }
+            rowWidths[rowCount] = width;
+            return rowCount++;
+        }
+
+        private int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+            }
+            return code;
+        }
     }
-} 
\ No newline at end of file
+}
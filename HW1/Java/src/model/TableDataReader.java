@@ -0,0 +1,332 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader of the binary table files written by {@link TableDataWriter}. Only the header
+ * and the table index are read when the reader is opened; the block of a table is
+ * memory-mapped and decoded when the table is read, so single tables of a large file
+ * can be read without decoding the others. Tables may be read from several threads.
+ */
+public final class TableDataReader implements Closeable {
+
+    // Smallest index entry: offset, stored and raw length, checksum, flags, row and column count, empty name
+    private static final int MIN_INDEX_ENTRY_BYTES = 8 + 4 + 4 + 4 + 1 + 4 + 4 + 1;
+
+    // Deflate never compresses by more than this ratio
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long dataStart;
+
+    private final String[] names;
+    private final long[] offsets;
+    private final int[] storedLengths;
+    private final int[] rawLengths;
+    private final int[] checksums;
+    private final int[] flags;
+    private final int[] rowCounts;
+    private final int[] columnCounts;
+
+    /**
+     * Open a table file; the tables are mapped from the file when they are read
+     * @param file Table file
+     */
+    public TableDataReader(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ), null);
+    }
+
+    /**
+     * Read tables from the bytes of a table file held in memory
+     * @param buffer Contents of a table file, from its position to its limit
+     */
+    public TableDataReader(ByteBuffer buffer) throws IOException {
+        this(null, buffer.slice());
+    }
+
+    private TableDataReader(FileChannel channel, ByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        try {
+            ByteBuffer header = region(0, TableDataWriter.HEADER_BYTES);
+            if (header.getInt() != TableDataWriter.MAGIC) {
+                throw new IOException("Not a table file");
+            }
+            int version = header.getShort();
+            if (version != TableDataWriter.VERSION) {
+                throw new IOException("Unsupported table file version: " + version);
+            }
+            header.getShort();
+            int tableCount = header.getInt();
+            int indexLength = header.getInt();
+            if (tableCount < 0 || indexLength < 0 || tableCount > indexLength / MIN_INDEX_ENTRY_BYTES) {
+                throw new IOException("Corrupt table file header");
+            }
+            dataStart = TableDataWriter.HEADER_BYTES + (long) indexLength;
+            ByteBuffer index = region(TableDataWriter.HEADER_BYTES, indexLength);
+
+            names = new String[tableCount];
+            offsets = new long[tableCount];
+            storedLengths = new int[tableCount];
+            rawLengths = new int[tableCount];
+            checksums = new int[tableCount];
+            flags = new int[tableCount];
+            rowCounts = new int[tableCount];
+            columnCounts = new int[tableCount];
+            for (int i = 0; i < tableCount; i++) {
+                offsets[i] = index.getLong();
+                storedLengths[i] = index.getInt();
+                rawLengths[i] = index.getInt();
+                checksums[i] = index.getInt();
+                flags[i] = index.get();
+                rowCounts[i] = index.getInt();
+                columnCounts[i] = index.getInt();
+                names[i] = readString(index);
+                long maxRawLength = (flags[i] & TableDataWriter.BLOCK_COMPRESSED) != 0
+                        ? (long) storedLengths[i] * MAX_DEFLATE_RATIO
+                        : storedLengths[i];
+                if (offsets[i] < 0 || storedLengths[i] < 0 || rawLengths[i] < 0 || rawLengths[i] > maxRawLength
+                        || rowCounts[i] < 0 || columnCounts[i] < 0) {
+                    throw new IOException("Corrupt index entry of table " + i);
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw new IOException("Corrupt table file: " + e, e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getTableCount() {
+        return names.length;
+    }
+
+    /**
+     * @param table Table index
+     * @return Name of the table, read from the index without decoding the table
+     */
+    public String getTableName(int table) {
+        return names[table];
+    }
+
+    /**
+     * @param table Table index
+     * @return Number of rows of the table, read from the index without decoding the table
+     */
+    public int getRowCount(int table) {
+        return rowCounts[table];
+    }
+
+    /**
+     * @param table Table index
+     * @return Number of headers of the table, read from the index without decoding the table
+     */
+    public int getColumnCount(int table) {
+        return columnCounts[table];
+    }
+
+    /**
+     * Decode one table
+     * @param table Table index
+     * @return Decoded table
+     */
+    public TableData readTable(int table) throws IOException {
+        ByteBuffer stored = region(dataStart + offsets[table], storedLengths[table]);
+
+        CRC32 crc = new CRC32();
+        crc.update(stored.duplicate());
+        if ((int) crc.getValue() != checksums[table]) {
+            throw new IOException("Checksum mismatch in table " + table + " (" + names[table] + ")");
+        }
+
+        ByteBuffer block = (flags[table] & TableDataWriter.BLOCK_COMPRESSED) != 0
+                ? inflate(stored, rawLengths[table])
+                : stored;
+        try {
+            return decode(table, block);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt table " + table + " (" + names[table] + "): " + e, e);
+        }
+    }
+
+    /**
+     * @return All tables of the file, in order
+     */
+    public List<TableData> readTables() throws IOException {
+        List<TableData> tables = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            tables.add(readTable(i));
+        }
+        return tables;
+    }
+
+    /**
+     * Read all tables of a file
+     * @param file Table file
+     * @return Tables of the file, in order
+     */
+    public static List<TableData> readTables(File file) throws IOException {
+        try (TableDataReader reader = new TableDataReader(file)) {
+            return reader.readTables();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private TableData decode(int table, ByteBuffer block) {
+        String[] dictionary = new String[readCount(block)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(block);
+        }
+
+        String[] headers = new String[readCount(block)];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = readString(block);
+        }
+
+        int rowCount = rowCounts[table];
+        int[] rowWidths = null;
+        if ((flags[table] & TableDataWriter.BLOCK_RAGGED) != 0) {
+            if (rowCount > block.remaining()) {
+                throw new IllegalStateException("Block too short for the widths of " + rowCount + " rows");
+            }
+            rowWidths = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                rowWidths[row] = readVarInt(block);
+            }
+        }
+
+        int[][] columns = new int[readCount(block)][];
+        if (rowWidths != null) {
+            for (int row = 0; row < rowCount; row++) {
+                if (rowWidths[row] < 0 || rowWidths[row] > columns.length) {
+                    throw new IllegalStateException("Row " + row + " has " + rowWidths[row] + " cells but the table has "
+                            + columns.length + " columns");
+                }
+            }
+        }
+        if ((long) rowCount * columns.length > block.remaining()) {
+            throw new IllegalStateException("Block too short for " + rowCount + " rows of " + columns.length + " columns");
+        }
+
+        // Only the cells beyond the width of a ragged row are absent
+        for (int column = 0; column < columns.length; column++) {
+            int[] codes = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                codes[row] = readVarInt(block) - 1;
+                if (codes[row] < -1 || codes[row] >= dictionary.length) {
+                    throw new IllegalStateException("Code " + codes[row] + " outside the dictionary");
+                }
+                boolean absent = rowWidths != null && column >= rowWidths[row];
+                if ((codes[row] == -1) != absent) {
+                    throw new IllegalStateException("Cell " + row + "," + column + (absent ? " beyond" : " within")
+                            + " the width of its row has code " + codes[row]);
+                }
+            }
+            columns[column] = codes;
+        }
+        return new TableData(names[table], headers, dictionary, columns, rowCount, rowWidths);
+    }
+
+    /**
+     * @return Buffer over a region of the file, positioned at its start
+     */
+    private ByteBuffer region(long position, int length) throws IOException {
+        if (channel != null) {
+            if (position + length > channel.size()) {
+                throw new IOException("Truncated table file");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+        if (position + length > buffer.limit()) {
+            throw new IOException("Truncated table file");
+        }
+        ByteBuffer region = buffer.duplicate();
+        region.position((int) position);
+        region.limit((int) position + length);
+        return region.slice();
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            byte[] compressed = new byte[stored.remaining()];
+            stored.get(compressed);
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Truncated compressed table block");
+            }
+            return ByteBuffer.wrap(raw);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed table block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed variable-length integer");
+    }
+
+    /**
+     * Read the number of entries that follow, each of which takes at least one byte
+     */
+    private static int readCount(ByteBuffer in) {
+        int count = readVarInt(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalStateException("Count " + count + " exceeds the remaining " + in.remaining() + " bytes");
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalStateException("String of " + length + " bytes exceeds the remaining " + in.remaining());
+        }
+        if (in.hasArray()) {
+            int start = in.arrayOffset() + in.position();
+            in.position(in.position() + length);
+            return new String(in.array(), start, length, StandardCharsets.UTF_8);
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,228 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writer of the binary table file format read by {@link TableDataReader}.
+ * <p>
+ * A file starts with a fixed header: the magic number "TDAT", the format version,
+ * the number of tables and the length of the table index. The index gives the name,
+ * size, position and checksum of every table block, so a reader can find and decode
+ * a single table without touching the others. Each block holds the dictionary of
+ * the distinct values of its table, the headers and the cell codes column by column.
+ * Strings are length-prefixed UTF-8; codes and lengths are variable-length integers.
+ * Blocks may be compressed with deflate.
+ */
+public final class TableDataWriter {
+
+    static final int MAGIC = 0x54444154;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    // Flags of a table block
+    static final int BLOCK_COMPRESSED = 1;
+    static final int BLOCK_RAGGED = 2;
+
+    private TableDataWriter() {
+    }
+
+    /**
+     * Write tables to a file
+     * @param tables Tables to write, in order
+     * @param file Target file, replaced if it exists
+     * @param compress true to compress the table blocks
+     */
+    public static void write(List<TableData> tables, File file, boolean compress) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(tables, out, compress);
+        }
+    }
+
+    /**
+     * Write tables to a stream. The stream is not closed.
+     * @param tables Tables to write, in order
+     * @param out Target stream
+     * @param compress true to compress the table blocks
+     */
+    public static void write(List<TableData> tables, OutputStream out, boolean compress) throws IOException {
+        // Blocks are encoded first because the index in front of them needs their sizes
+        byte[][] blocks = new byte[tables.size()][];
+        ByteSink index = new ByteSink();
+        ByteSink block = new ByteSink();
+        long offset = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            TableData table = tables.get(i);
+            block.reset();
+            encode(table, block);
+            int rawLength = block.size();
+
+            int flags = table.rowWidths() != null ? BLOCK_RAGGED : 0;
+            byte[] stored = block.toByteArray();
+            if (compress) {
+                byte[] compressed = deflate(stored);
+                if (compressed.length < stored.length) {
+                    stored = compressed;
+                    flags |= BLOCK_COMPRESSED;
+                }
+            }
+            blocks[i] = stored;
+
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+
+            index.writeLong(offset);
+            index.writeInt(stored.length);
+            index.writeInt(rawLength);
+            index.writeInt((int) crc.getValue());
+            index.writeByte(flags);
+            index.writeInt(table.getRowCount());
+            index.writeInt(table.getHeaders().size());
+            index.writeString(table.getTableName());
+            offset += stored.length;
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeShort(0);
+        data.writeInt(blocks.length);
+        data.writeInt(index.size());
+        index.writeTo(data);
+        for (byte[] stored : blocks) {
+            data.write(stored);
+        }
+        data.flush();
+    }
+
+    /**
+     * Encode the dictionary, headers and cell codes of a table
+     */
+    private static void encode(TableData table, ByteSink block) {
+        String[] dictionary = table.dictionary();
+        block.writeVarInt(dictionary.length);
+        for (String value : dictionary) {
+            block.writeString(value);
+        }
+
+        List<String> headers = table.getHeaders();
+        block.writeVarInt(headers.size());
+        for (String header : headers) {
+            block.writeString(header);
+        }
+
+        int[] rowWidths = table.rowWidths();
+        if (rowWidths != null) {
+            for (int width : rowWidths) {
+                block.writeVarInt(width);
+            }
+        }
+
+        // Absent cells of ragged rows are written as 0, every other code is shifted by one
+        int[][] columns = table.columns();
+        block.writeVarInt(columns.length);
+        for (int[] codes : columns) {
+            for (int code : codes) {
+                block.writeVarInt(code + 1);
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteSink compressed = new ByteSink();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Growable byte array with the big-endian and variable-length encodings of the format
+     */
+    private static final class ByteSink {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        /**
+         * Write a non-negative int in 7-bit groups, least significant group first
+         */
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
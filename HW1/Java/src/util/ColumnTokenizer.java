@@ -0,0 +1,224 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Splits lines of extracted text into columns without regular expressions.
+ * A line is split on tabs if it has one, otherwise on runs of two or more
+ * whitespace characters if it has two adjacent spaces, otherwise on pipes.
+ * Columns are trimmed and empty columns are dropped, which gives the same
+ * columns as splitting with "\\t", "\\s{2,}" or "\\|" and cleaning the result.
+ * Lines are addressed by index ranges of the page text, so no line strings are
+ * created. Instances are not thread-safe; the token buffer is reused per line.
+ */
+public class ColumnTokenizer {
+    private String[] tokens = new String[16];
+    private int size;
+
+    /**
+     * Split a line into trimmed, non-empty columns
+     * @param text Text holding the line
+     * @param start Index of the first character of the line
+     * @param end Index after the last character of the line, without the line break
+     * @return Number of columns, 0 if the line has no delimiter
+     */
+    public int tokenize(String text, int start, int end) {
+        size = 0;
+        if (indexOf(text, start, end, '\t') >= 0) {
+            splitOn(text, start, end, '\t');
+        } else if (hasDoubleSpace(text, start, end)) {
+            splitOnWhitespaceRuns(text, start, end);
+        } else if (indexOf(text, start, end, '|') >= 0) {
+            splitOn(text, start, end, '|');
+        }
+        return size;
+    }
+
+    /**
+     * @param index Index of the column
+     * @return Column of the last tokenized line
+     */
+    public String get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return tokens[index];
+    }
+
+    /**
+     * @return Columns of the last tokenized line
+     */
+    public String[] toArray() {
+        return Arrays.copyOf(tokens, size);
+    }
+
+    /**
+     * Find the end of the line starting at an index
+     * @param text Text to scan
+     * @param start Index of the first character of the line
+     * @return Index of the next '\n', or the text length for the last line
+     */
+    public static int lineBreak(String text, int start) {
+        int newline = text.indexOf('\n', start);
+        return newline >= 0 ? newline : text.length();
+    }
+
+    /**
+     * Exclude the '\r' of a "\r\n" line break from a line
+     * @param text Text holding the line
+     * @param start Index of the first character of the line
+     * @param lineBreak Index returned by {@link #lineBreak(String, int)}
+     * @return Index after the last character of the line
+     */
+    public static int lineEnd(String text, int start, int lineBreak) {
+        if (lineBreak < text.length() && lineBreak > start && text.charAt(lineBreak - 1) == '\r') {
+            return lineBreak - 1;
+        }
+        return lineBreak;
+    }
+
+    /**
+     * Find the first time range like "9:00 - 10:30" in a range of text, with the same
+     * matches as the pattern (\d{1,2}:\d{2})\s*-\s*(\d{1,2}:\d{2})
+     * @param text Text to search
+     * @param start Index to start searching at
+     * @param end Index to stop searching at
+     * @return Start index of the time range, or -1 if there is none
+     */
+    public static int findTimeRange(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (isDigit(text.charAt(i)) && matchTimeRange(text, i, end) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Match a time range starting exactly at an index
+     * @param text Text to match
+     * @param start Index the time range has to start at
+     * @param end Index the time range has to end before
+     * @return Index after the time range, or -1 if it does not start at the index
+     */
+    public static int matchTimeRange(String text, int start, int end) {
+        int i = matchTime(text, start, end);
+        if (i < 0) {
+            return -1;
+        }
+        i = skipWhitespace(text, i, end);
+        if (i >= end || text.charAt(i) != '-') {
+            return -1;
+        }
+        i = skipWhitespace(text, i + 1, end);
+        return matchTime(text, i, end);
+    }
+
+    /**
+     * Match a time like "9:00" or "09:00" starting at an index
+     * @return Index after the time, or -1 if there is no time at the index
+     */
+    private static int matchTime(String text, int start, int end) {
+        int i = start;
+        if (i >= end || !isDigit(text.charAt(i))) {
+            return -1;
+        }
+        i++;
+        if (i < end && isDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i + 3 > end || text.charAt(i) != ':'
+                || !isDigit(text.charAt(i + 1)) || !isDigit(text.charAt(i + 2))) {
+            return -1;
+        }
+        return i + 3;
+    }
+
+    private void splitOn(String text, int start, int end, char delimiter) {
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == delimiter) {
+                addTrimmed(text, tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        addTrimmed(text, tokenStart, end);
+    }
+
+    private void splitOnWhitespaceRuns(String text, int start, int end) {
+        int tokenStart = start;
+        int i = start;
+        while (i < end) {
+            if (!isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int runEnd = skipWhitespace(text, i, end);
+            if (runEnd - i >= 2) {
+                addTrimmed(text, tokenStart, i);
+                tokenStart = runEnd;
+            }
+            i = runEnd;
+        }
+        addTrimmed(text, tokenStart, end);
+    }
+
+    /**
+     * Add a column with the same trimming as String.trim, skipping it if it is empty
+     */
+    private void addTrimmed(String text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+        }
+        tokens[size++] = text.substring(start, end);
+    }
+
+    private static boolean hasDoubleSpace(String text, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            if (text.charAt(i) == ' ' && text.charAt(i - 1) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(String text, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String text, int start, int end) {
+        int i = start;
+        while (i < end && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Same characters as \s in a Java regular expression
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same characters as \d in a Java regular expression
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,32 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one stage of a PDF or Excel conversion
+ */
+@Name("transformer.ConversionStage")
+@Label("Conversion Stage")
+@Category({ "Table Transformer", "Conversion" })
+@Description("A stage of converting a PDF or Excel file to tables")
+public class ConversionStageEvent extends Event {
+
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Page or Sheet")
+    @Description("Index of the page or sheet the stage worked on, -1 for the whole file")
+    public int index;
+
+    @Label("Allocated")
+    @DataAmount
+    public long allocatedBytes;
+}
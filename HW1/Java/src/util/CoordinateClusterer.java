@@ -0,0 +1,82 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Clusters coordinates on a primitive sorted array. A value is kept only if no
+ * value kept before it lies closer than the tolerance, which gives the same result
+ * as comparing each value against every kept value in insertion order, but finds
+ * the nearest kept values with a binary search instead of a linear scan.
+ * Adding a value allocates nothing unless the array has to grow.
+ */
+public class CoordinateClusterer {
+    private final float tolerance;
+    private float[] values;
+    private int size;
+
+    public CoordinateClusterer(float tolerance) {
+        this.tolerance = tolerance;
+        this.values = new float[64];
+    }
+
+    /**
+     * Add a coordinate unless a kept coordinate is already within the tolerance
+     * @param value Coordinate to add
+     * @return true if the coordinate was kept
+     */
+    public boolean add(float value) {
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+
+        // Only the nearest kept values on each side can be within the tolerance
+        if (position > 0 && Math.abs(values[position - 1] - value) < tolerance) {
+            return false;
+        }
+        if (position < size && Math.abs(values[position] - value) < tolerance) {
+            return false;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, position, values, position + 1, size - position);
+        values[position] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return Number of kept coordinates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of the kept coordinate, in ascending order
+     * @return Kept coordinate
+     */
+    public float get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * @return Kept coordinates in ascending order
+     */
+    public float[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Remove all kept coordinates so the clusterer can be reused
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,134 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Finds the merged region covering a cell of a sheet without scanning all regions.
+ * The regions are kept in a centered interval tree over their rows: every node holds
+ * the regions crossing its center row, sorted by first column. Regions crossing the
+ * same row cannot share a column, so a binary search finds the only candidate of a
+ * node, and a lookup visits O(log n) nodes.
+ */
+public class MergedRegionIndex {
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * @param regions Merged regions of a sheet; regions must not overlap, as in any valid workbook
+     */
+    public MergedRegionIndex(Collection<CellRangeAddress> regions) {
+        this.root = build(new ArrayList<>(regions));
+        this.size = regions.size();
+    }
+
+    /**
+     * @return true if the sheet has no merged regions
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the merged region covering a cell
+     * @param row Zero-based row index
+     * @param column Zero-based column index
+     * @return Region covering the cell, or null if the cell is not merged
+     */
+    public CellRangeAddress find(int row, int column) {
+        Node node = root;
+        while (node != null) {
+            CellRangeAddress candidate = node.findColumn(column);
+            if (candidate != null && candidate.getFirstRow() <= row && row <= candidate.getLastRow()) {
+                return candidate;
+            }
+            if (row == node.center) {
+                return null;
+            }
+            node = row < node.center ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Build the subtree of a set of regions, centered on the median of their middle rows
+     */
+    private static Node build(List<CellRangeAddress> regions) {
+        if (regions.isEmpty()) {
+            return null;
+        }
+
+        int[] middles = new int[regions.size()];
+        for (int i = 0; i < middles.length; i++) {
+            CellRangeAddress region = regions.get(i);
+            middles[i] = region.getFirstRow() + (region.getLastRow() - region.getFirstRow()) / 2;
+        }
+        Arrays.sort(middles);
+        int center = middles[middles.length / 2];
+
+        // The region whose middle is the median crosses the center, so every level gets smaller
+        List<CellRangeAddress> above = new ArrayList<>();
+        List<CellRangeAddress> below = new ArrayList<>();
+        List<CellRangeAddress> crossing = new ArrayList<>();
+        for (CellRangeAddress region : regions) {
+            if (region.getLastRow() < center) {
+                above.add(region);
+            } else if (region.getFirstRow() > center) {
+                below.add(region);
+            } else {
+                crossing.add(region);
+            }
+        }
+        crossing.sort(Comparator.comparingInt(CellRangeAddress::getFirstColumn));
+
+        Node node = new Node(center, crossing.toArray(new CellRangeAddress[0]));
+        node.left = build(above);
+        node.right = build(below);
+        return node;
+    }
+
+    private static final class Node {
+        final int center;
+        final CellRangeAddress[] regions;
+        Node left;
+        Node right;
+
+        Node(int center, CellRangeAddress[] regions) {
+            this.center = center;
+            this.regions = regions;
+        }
+
+        /**
+         * @return Region of this node whose columns include the column, or null
+         */
+        CellRangeAddress findColumn(int column) {
+            // Last region starting at or before the column
+            int low = 0;
+            int high = regions.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (regions[middle].getFirstColumn() <= column) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (found >= 0 && regions[found].getLastColumn() >= column) {
+                return regions[found];
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.TableData;
+import model.TableDataReader;
+import model.TableDataWriter;
+
+/**
+ * On-disk cache of extraction results, keyed by a digest of the file bytes and the
+ * extractor version. Entries are compressed table files written by {@link TableDataWriter}
+ * and are evicted least recently used first once the cache grows beyond its size cap.
+ */
+public class ResultCache {
+
+    private static final String ENTRY_SUFFIX = ".tables";
+
+    private final File directory;
+    private final long maxBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param directory Directory holding the cache entries, created if missing
+     * @param maxBytes Maximum total size of the cache entries
+     */
+    public ResultCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Compute the cache key of a file
+     * @param file Source file
+     * @param extractorVersion Version of the extractor and the options that change its output
+     * @return Hex digest identifying the file contents and extractor version
+     */
+    public String key(File file, String extractorVersion) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update(extractorVersion.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Look up the cached tables of a key
+     * @param key Cache key from {@link #key(File, String)}
+     * @return Cached tables, or null on a miss
+     */
+    public List<TableData> get(String key) {
+        File entry = entryFile(key);
+        if (!entry.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            // Entries are read into memory rather than mapped, so they can be replaced or deleted at once
+            List<TableData> tables = new TableDataReader(ByteBuffer.wrap(Files.readAllBytes(entry.toPath())))
+                    .readTables();
+
+            // Mark the entry as recently used
+            entry.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return tables;
+        } catch (IOException e) {
+            // Unreadable or outdated entry, drop it and extract again
+            System.err.println("Discarding unreadable cache entry " + entry.getName() + ": " + e.getMessage());
+            entry.delete();
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Store the tables of a key and evict old entries if the cache is too large
+     * @param key Cache key from {@link #key(File, String)}
+     * @param tables Tables to store
+     */
+    public synchronized void put(String key, List<TableData> tables) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Cannot create cache directory: " + directory);
+            return;
+        }
+
+        File temp = null;
+        try {
+            // Write to a temporary file first so readers never see a partial entry
+            temp = File.createTempFile(key, ".tmp", directory);
+            TableDataWriter.write(tables, temp, true);
+            Files.move(temp.toPath(), entryFile(key).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing cache entry: " + e.getMessage());
+            return;
+        } finally {
+            // Eviction only counts entries, so a temporary file left by a failed write would stay forever
+            if (temp != null) {
+                deleteTemporaryFile(temp);
+            }
+        }
+
+        evict();
+    }
+
+    /**
+     * Delete the least recently used entries until the cache fits in its size cap
+     */
+    private void evict() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        if (entries == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (File entry : entries) {
+            totalBytes += entry.length();
+        }
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length && totalBytes > maxBytes; i++) {
+            long length = entries[i].length();
+            if (entries[i].delete()) {
+                totalBytes -= length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Delete a temporary entry file unless it was moved into place
+     * @param temp Temporary file
+     */
+    private void deleteTemporaryFile(File temp) {
+        try {
+            Files.deleteIfExists(temp.toPath());
+        } catch (IOException e) {
+            System.err.println("Cannot delete temporary cache file " + temp.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "cache hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+    }
+}
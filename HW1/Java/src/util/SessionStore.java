@@ -0,0 +1,117 @@
+package util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.ConversionResult;
+
+/**
+ * Bounded in-memory store of the conversion results a session keeps around, e.g. the
+ * files open in a view. Results are evicted least recently used first once there are
+ * more than the maximum number of results or their tables hold more than the maximum
+ * number of cells. The store may be used from several threads.
+ */
+public class SessionStore {
+
+    private final int maxResults;
+    private final long maxCells;
+
+    private final LinkedHashMap<String, ConversionResult> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalCells;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxResults Maximum number of stored results
+     * @param maxCells Maximum total number of cells of the stored tables
+     */
+    public SessionStore(int maxResults, long maxCells) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("Session store must hold at least 1 result: " + maxResults);
+        }
+        this.maxResults = maxResults;
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Look up a stored result and mark it as recently used
+     * @param key Key the result was stored under
+     * @return Stored result, or null if there is none
+     */
+    public synchronized ConversionResult get(String key) {
+        ConversionResult result = results.get(key);
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Store a result and evict old results if the store is full. The result just stored
+     * is kept even if it is larger than the cell cap on its own.
+     * @param key Key of the result, e.g. the path of the converted file
+     * @param result Result to store
+     */
+    public synchronized void put(String key, ConversionResult result) {
+        ConversionResult previous = results.put(key, result);
+        if (previous != null) {
+            totalCells -= previous.getCellCount();
+        }
+        totalCells += result.getCellCount();
+
+        Iterator<ConversionResult> iterator = results.values().iterator();
+        while ((results.size() > maxResults || totalCells > maxCells) && results.size() > 1) {
+            totalCells -= iterator.next().getCellCount();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param key Key of the result to drop
+     * @return Dropped result, or null if there was none
+     */
+    public synchronized ConversionResult remove(String key) {
+        ConversionResult result = results.remove(key);
+        if (result != null) {
+            totalCells -= result.getCellCount();
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        totalCells = 0;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized long getTotalCells() {
+        return totalCells;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "session results: " + size() + ", hits: " + getHits() + ", misses: " + getMisses()
+                + ", evictions: " + getEvictions();
+    }
+}
@@ -0,0 +1,333 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+
+/**
+ * Cache of parsed fonts shared by the documents of a batch conversion, so that
+ * documents made from the same template do not parse the same embedded fonts
+ * again. Fonts are keyed by a digest of their font dictionary, including the raw
+ * bytes of the embedded font streams.
+ * PDFBox fonts are not thread-safe, so a font is lent to one document at a time:
+ * a document takes an idle font out of the cache and hands it back when it is
+ * released with {@link #release(PDDocument)}. Documents converted at the same time
+ * on other threads parse their own copy, which is kept as well. Idle fonts are
+ * evicted least recently used first once their font streams exceed the size cap.
+ * Type 3 fonts are never shared because their glyphs are drawn from content
+ * streams that belong to the document they were loaded from.
+ */
+public class SharedResourceCache {
+
+    // Size counted for every cached font on top of its font streams
+    private static final long FONT_OVERHEAD_BYTES = 1024;
+
+    private final long maxBytes;
+
+    // Idle fonts by digest, least recently used first
+    private final LinkedHashMap<String, List<CachedFont>> idleFonts = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes Maximum total size of the font streams of the idle fonts
+     */
+    public SharedResourceCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Create the resource cache of a newly loaded document
+     * @return Resource cache to set on the document, backed by this shared cache
+     */
+    public ResourceCache forDocument() {
+        return new DocumentResourceCache();
+    }
+
+    /**
+     * Hand the fonts of a document back to the shared cache it was loaded with, if any.
+     * The document must not be used afterwards, except to close it.
+     * @param document Document whose resource cache was created by {@link #forDocument()}
+     */
+    public static void release(PDDocument document) {
+        ResourceCache resourceCache = document.getResourceCache();
+        if (resourceCache instanceof DocumentResourceCache) {
+            ((DocumentResourceCache) resourceCache).release();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "font cache hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+    }
+
+    /**
+     * Take an idle font out of the cache
+     * @return Font, or null if no idle font has the digest
+     */
+    private synchronized PDFont lend(String digest) {
+        List<CachedFont> fonts = idleFonts.get(digest);
+        if (fonts == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        CachedFont cached = fonts.remove(fonts.size() - 1);
+        if (fonts.isEmpty()) {
+            idleFonts.remove(digest);
+        }
+        totalBytes -= cached.size;
+        return cached.font;
+    }
+
+    /**
+     * Put fonts a document no longer uses back into the cache and evict old fonts if it is full
+     */
+    private synchronized void giveBack(Map<String, CachedFont> fonts) {
+        for (Map.Entry<String, CachedFont> entry : fonts.entrySet()) {
+            idleFonts.computeIfAbsent(entry.getKey(), digest -> new ArrayList<>(1)).add(entry.getValue());
+            totalBytes += entry.getValue().size;
+        }
+
+        Iterator<List<CachedFont>> iterator = idleFonts.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            for (CachedFont cached : iterator.next()) {
+                totalBytes -= cached.size;
+                evictions.incrementAndGet();
+            }
+            iterator.remove();
+        }
+    }
+
+    private static final class CachedFont {
+        final PDFont font;
+        final long size;
+
+        CachedFont(PDFont font, long size) {
+            this.font = font;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Resource cache of a single document. Fonts are looked up by object first and
+     * then by content among the fonts of the document and in the shared cache; all
+     * other resources are cached per document.
+     */
+    private final class DocumentResourceCache extends DefaultResourceCache {
+
+        // Digest and size of the font objects looked up in the shared cache without a hit
+        private final Map<COSObject, FontKey> missedFonts = new IdentityHashMap<>();
+
+        // Shareable fonts used by the document, by digest, handed back when it is released
+        private final Map<String, CachedFont> documentFonts = new HashMap<>();
+
+        @Override
+        public PDFont getFont(COSObject indirect) throws IOException {
+            PDFont font = super.getFont(indirect);
+            if (font != null) {
+                return font;
+            }
+
+            FontKey key = fontKey(indirect);
+            if (key == null) {
+                return null;
+            }
+
+            CachedFont documentFont = documentFonts.get(key.digest);
+            if (documentFont != null) {
+                font = documentFont.font;
+            } else {
+                font = lend(key.digest);
+                if (font != null) {
+                    documentFonts.put(key.digest, new CachedFont(font, key.size));
+                }
+            }
+            if (font != null) {
+                super.put(indirect, font);
+            } else {
+                missedFonts.put(indirect, key);
+            }
+            return font;
+        }
+
+        @Override
+        public void put(COSObject indirect, PDFont font) throws IOException {
+            super.put(indirect, font);
+
+            FontKey key = missedFonts.remove(indirect);
+            if (key != null && font != null && !(font instanceof PDType3Font)) {
+                documentFonts.putIfAbsent(key.digest, new CachedFont(font, key.size));
+            }
+        }
+
+        void release() {
+            giveBack(documentFonts);
+            documentFonts.clear();
+            missedFonts.clear();
+        }
+
+        /**
+         * Compute the content key of a font object
+         * @return Key of the font, or null if the object is not a font dictionary
+         */
+        private FontKey fontKey(COSObject indirect) {
+            COSBase base = indirect.getObject();
+            if (!(base instanceof COSDictionary)) {
+                return null;
+            }
+            COSDictionary dictionary = (COSDictionary) base;
+            if (COSName.TYPE3.equals(dictionary.getCOSName(COSName.SUBTYPE))) {
+                return null;
+            }
+
+            try {
+                ContentDigest digest = new ContentDigest();
+                digest.update(dictionary);
+                return new FontKey(digest.toHex(), FONT_OVERHEAD_BYTES + digest.streamBytes);
+            } catch (IOException e) {
+                System.err.println("Cannot compute font digest: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static final class FontKey {
+        final String digest;
+        final long size;
+
+        FontKey(String digest, long size) {
+            this.digest = digest;
+            this.size = size;
+        }
+    }
+
+    /**
+     * SHA-256 digest of a COS object graph. Dictionary entries are visited in key order
+     * and streams contribute their raw, still encoded bytes.
+     */
+    private static final class ContentDigest {
+        private final MessageDigest digest;
+        private final Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final byte[] buffer = new byte[8192];
+        private long streamBytes;
+
+        ContentDigest() throws IOException {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("SHA-256 is not available", e);
+            }
+        }
+
+        void update(COSBase base) throws IOException {
+            if (base instanceof COSObject) {
+                base = ((COSObject) base).getObject();
+            }
+            if (base == null) {
+                updateString("null");
+                return;
+            }
+
+            // Objects seen before are written as a back reference, which also breaks cycles
+            if ((base instanceof COSDictionary || base instanceof COSArray) && !visited.add(base)) {
+                updateString("ref");
+                return;
+            }
+
+            if (base instanceof COSDictionary) {
+                COSDictionary dictionary = (COSDictionary) base;
+                List<COSName> keys = new ArrayList<>(dictionary.keySet());
+                Collections.sort(keys);
+                updateString(base instanceof COSStream ? "stream{" : "dict{");
+                for (COSName key : keys) {
+                    updateString(key.getName());
+                    update(dictionary.getItem(key));
+                }
+                updateString("}");
+                if (base instanceof COSStream) {
+                    updateStream((COSStream) base);
+                }
+            } else if (base instanceof COSArray) {
+                updateString("[");
+                for (COSBase item : (COSArray) base) {
+                    update(item);
+                }
+                updateString("]");
+            } else if (base instanceof COSString) {
+                updateString("string");
+                digest.update(((COSString) base).getBytes());
+                digest.update((byte) 0);
+            } else {
+                updateString(base.getClass().getSimpleName() + ":" + base.toString());
+            }
+        }
+
+        private void updateStream(COSStream stream) throws IOException {
+            try (InputStream in = stream.createRawInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    streamBytes += read;
+                }
+            }
+        }
+
+        private void updateString(String value) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        String toHex() {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+    }
+}
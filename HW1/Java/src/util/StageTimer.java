@@ -0,0 +1,98 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import model.ConversionReport;
+
+/**
+ * Measures one stage of a conversion on the current thread. The time and the bytes
+ * the thread allocated are added to the conversion report, and a Flight Recorder
+ * event is committed when the event is enabled.
+ */
+public class StageTimer {
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = allocationBean();
+
+    private final ConversionReport report;
+    private final String stage;
+    private final int index;
+    private final String label;
+    private final ConversionStageEvent event;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+
+    private StageTimer(ConversionReport report, String stage, int index, String label) {
+        this.report = report;
+        this.stage = stage;
+        this.index = index;
+        this.label = label;
+        this.event = new ConversionStageEvent();
+        this.event.begin();
+        this.startAllocatedBytes = allocatedBytes();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Start timing a stage
+     * @param report Report of the conversion
+     * @param stage Name of the stage
+     * @param index Index of the page or sheet, -1 for the whole file
+     * @return Timer to stop when the stage is done
+     */
+    public static StageTimer start(ConversionReport report, String stage, int index) {
+        return new StageTimer(report, stage, index, null);
+    }
+
+    /**
+     * Start timing a stage on a named page or sheet
+     * @param report Report of the conversion
+     * @param stage Name of the stage
+     * @param index Index of the page or sheet
+     * @param label Name of the page or sheet, e.g. the sheet name
+     * @return Timer to stop when the stage is done
+     */
+    public static StageTimer start(ConversionReport report, String stage, int index, String label) {
+        return new StageTimer(report, stage, index, label);
+    }
+
+    /**
+     * Stop timing and record the stage
+     */
+    public void stop() {
+        long nanos = System.nanoTime() - startNanos;
+        long allocated = startAllocatedBytes >= 0 ? allocatedBytes() - startAllocatedBytes : -1;
+
+        report.record(stage, index, label, nanos, allocated);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.fileName = report.getFileName();
+            event.stage = stage;
+            event.index = index;
+            event.allocatedBytes = allocated;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, or -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        if (ALLOCATION_BEAN == null) {
+            return -1;
+        }
+        return ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean;
+            }
+        }
+        return null;
+    }
+}
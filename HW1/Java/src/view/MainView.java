@@ -11,7 +11,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
@@ -26,13 +29,20 @@ import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.JToolBar;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 
+import controller.ExtractionRequest;
 import controller.FileController;
 import controller.HtmlController;
+import controller.LazyPdfDocument;
+import model.ConversionResult;
 import model.TableData;
 import util.FileValidator;
+import util.ResultCache;
+import util.SessionStore;
 
 /**
  * Main view class for the application
@@ -41,6 +51,13 @@ import util.FileValidator;
 public class MainView extends JFrame {
     private static final long serialVersionUID = 1L;
     
+    // Size cap of the on-disk cache of extracted tables
+    private static final long CACHE_SIZE_BYTES = 64L * 1024 * 1024;
+    
+    // Caps of the converted Excel files kept in memory for reopening
+    private static final int SESSION_MAX_RESULTS = 8;
+    private static final long SESSION_MAX_CELLS = 2_000_000L;
+    
     private JTabbedPane tabbedPane;
     private JPanel statusPanel;
     private JLabel statusLabel;
@@ -50,14 +67,28 @@ public class MainView extends JFrame {
     private FileController fileController;
     private HtmlController htmlController;
     
+    // Excel files converted in this session, by path, size and modification time
+    private final SessionStore sessionStore = new SessionStore(SESSION_MAX_RESULTS, SESSION_MAX_CELLS);
+    
     // Keep track of the last generated HTML file
     private File lastGeneratedHtmlFile;
     
+    // Tables currently shown in the preview
+    private List<TableData> currentTableDataList = new ArrayList<>();
+    
+    // PDF file whose pages are extracted when their tab is selected, null if no PDF is open
+    private LazyPdfDocument lazyPdfDocument;
+    
+    // Pages of the open PDF file whose tab already shows the extracted table
+    private boolean[] loadedPageTabs;
+    
     public MainView() {
         super("Table Transformer - SEDS519");
         
         // Initialize controllers
         fileController = new FileController();
+        fileController.setResultCache(new ResultCache(
+                new File(System.getProperty("java.io.tmpdir"), "table-transformer-cache"), CACHE_SIZE_BYTES));
         htmlController = new HtmlController();
         
         // Set up the frame
@@ -75,6 +106,17 @@ public class MainView extends JFrame {
         
         // Create tabbed pane for the left side (tables and previews)
         tabbedPane = new JTabbedPane();
+        tabbedPane.setTabLayoutPolicy(JTabbedPane.SCROLL_TAB_LAYOUT);
+        tabbedPane.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                // Extract the page of a PDF tab the first time it is selected
+                int selectedIndex = tabbedPane.getSelectedIndex();
+                if (lazyPdfDocument != null && selectedIndex >= 1) {
+                    loadPageTab(selectedIndex - 1);
+                }
+            }
+        });
         
         // Create table preview panel
         tablePreviewPanel = new JPanel(new BorderLayout());
@@ -175,13 +217,26 @@ public class MainView extends JFrame {
             
             statusLabel.setText("Processing PDF file: " + selectedFile.getName());
             
-            // Process PDF file
-            List<TableData> tableDataList = fileController.processPdfFile(selectedFile);
+            closeLazyPdf();
+            clearTablePreviews();
             
-            // Update UI with the new data
-            updateTablePreviews(tableDataList);
+            // Only the page count and titles are read now, pages are extracted when their tab is selected
+            try {
+                lazyPdfDocument = fileController.openLazyPdf(selectedFile);
+            } catch (IOException e) {
+                statusLabel.setText("Failed to process PDF file: " + e.getMessage());
+                JOptionPane.showMessageDialog(this, "Error opening PDF file: " + e.getMessage(), 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            showPdfPages();
+            
+            // Extract the remaining pages in the background while the user looks at the first one
+            lazyPdfDocument.startPrefetch();
             
-            statusLabel.setText("PDF file processed: " + selectedFile.getName());
+            statusLabel.setText("PDF file opened: " + selectedFile.getName() 
+                    + " (" + lazyPdfDocument.getPageCount() + " pages, " + fileController.getResultCache() + ")");
         }
     }
     
@@ -201,47 +256,153 @@ public class MainView extends JFrame {
             
             statusLabel.setText("Processing Excel file: " + selectedFile.getName());
             
-            // Process Excel file
-            List<TableData> tableDataList = fileController.processExcelFile(selectedFile);
+            closeLazyPdf();
+            
+            // Reopening a file converted before in this session skips the conversion
+            String sessionKey = selectedFile.getAbsolutePath() + "|" + selectedFile.length() 
+                    + "|" + selectedFile.lastModified();
+            ConversionResult conversion = sessionStore.get(sessionKey);
+            if (conversion == null) {
+                conversion = fileController.convertExcelFile(selectedFile, ExtractionRequest.ALL);
+                
+                // A failed conversion is tried again the next time the file is opened
+                if (conversion.isSuccessful()) {
+                    sessionStore.put(sessionKey, conversion);
+                }
+            }
             
             // Update UI with the new data
-            updateTablePreviews(tableDataList);
+            updateTablePreviews(conversion.getTables());
             
-            statusLabel.setText("Excel file processed: " + selectedFile.getName());
+            statusLabel.setText("Excel file processed: " + selectedFile.getName() 
+                    + " (" + fileController.getResultCache() + ", " + sessionStore + ")");
+        }
+    }
+    
+    /**
+     * Closes a previously opened PDF file and stops extracting its pages
+     */
+    private void closeLazyPdf() {
+        if (lazyPdfDocument != null) {
+            lazyPdfDocument.close();
+            lazyPdfDocument = null;
+            loadedPageTabs = null;
         }
     }
     
+    /**
+     * Shows a tab for every page of the open PDF file, or the only page in the main preview panel
+     */
+    private void showPdfPages() {
+        int pageCount = lazyPdfDocument.getPageCount();
+        loadedPageTabs = new boolean[pageCount];
+        
+        tablePreviewPanel.removeAll();
+        if (pageCount == 1) {
+            tablePreviewPanel.add(new JLabel("Loading " + lazyPdfDocument.getPageTitle(0) + "..."), BorderLayout.CENTER);
+            loadPageTab(0);
+        } else {
+            tablePreviewPanel.add(new JLabel(pageCount + " pages. Select a page tab to view its table."), BorderLayout.CENTER);
+            for (int i = 0; i < pageCount; i++) {
+                tabbedPane.addTab(lazyPdfDocument.getPageTitle(i), 
+                        new JLabel("Loading " + lazyPdfDocument.getPageTitle(i) + "..."));
+            }
+            tabbedPane.setSelectedIndex(1);
+        }
+        
+        // Refresh the UI
+        tablePreviewPanel.revalidate();
+        tablePreviewPanel.repaint();
+    }
+    
+    /**
+     * Shows the table of a PDF page once it is extracted
+     * @param pageIndex Index of the page
+     */
+    private void loadPageTab(int pageIndex) {
+        if (pageIndex >= loadedPageTabs.length || loadedPageTabs[pageIndex]) {
+            return;
+        }
+        loadedPageTabs[pageIndex] = true;
+        
+        LazyPdfDocument document = lazyPdfDocument;
+        document.getPageTable(pageIndex).whenComplete((tableData, error) -> SwingUtilities.invokeLater(() -> {
+            if (lazyPdfDocument != document) {
+                return; // Another file was opened in the meantime
+            }
+            
+            JPanel pagePanel;
+            if (error != null) {
+                pagePanel = new JPanel(new BorderLayout());
+                pagePanel.add(new JLabel("Failed to extract " + document.getPageTitle(pageIndex) 
+                        + ": " + error.getMessage()), BorderLayout.CENTER);
+            } else {
+                pagePanel = createTablePanel(tableData);
+            }
+            
+            if (document.getPageCount() == 1) {
+                tablePreviewPanel.removeAll();
+                tablePreviewPanel.add(pagePanel, BorderLayout.CENTER);
+                tablePreviewPanel.revalidate();
+                tablePreviewPanel.repaint();
+            } else {
+                tabbedPane.setComponentAt(pageIndex + 1, pagePanel);
+            }
+        }));
+    }
+    
     /**
      * Updates the UI with the new table data
      * @param tableDataList The list of table data to display
      */
     private void updateTablePreviews(List<TableData> tableDataList) {
+        clearTablePreviews();
+        
+        // Create tabs for each table
+        for (TableData tableData : tableDataList) {
+            addTablePreview(tableData);
+        }
+    }
+    
+    /**
+     * Removes all table previews
+     */
+    private void clearTablePreviews() {
         // Clear existing tabs except the first tab (which is the permanent "Table Preview" tab)
         while (tabbedPane.getTabCount() > 1) {
             tabbedPane.removeTabAt(1);
         }
         
+        currentTableDataList = new ArrayList<>();
+        
         // Update the main table preview panel
         tablePreviewPanel.removeAll();
+        tablePreviewPanel.add(new JLabel("No data available. Please load a file first."), BorderLayout.CENTER);
         
-        if (tableDataList.isEmpty()) {
-            tablePreviewPanel.add(new JLabel("No data available. Please load a file first."), BorderLayout.CENTER);
+        // Refresh the UI
+        tablePreviewPanel.revalidate();
+        tablePreviewPanel.repaint();
+    }
+    
+    /**
+     * Adds one more table to the previews
+     * @param tableData The table data to display
+     */
+    private void addTablePreview(TableData tableData) {
+        currentTableDataList.add(tableData);
+        
+        tablePreviewPanel.removeAll();
+        
+        if (currentTableDataList.size() == 1) {
+            // If only one table, update the main preview panel
+            tablePreviewPanel.add(createTablePanel(tableData), BorderLayout.CENTER);
         } else {
-            // Create tabs for each table
-            for (int i = 0; i < tableDataList.size(); i++) {
-                TableData tableData = tableDataList.get(i);
-                
-                // Create a new panel for this table
-                JPanel tablePanel = createTablePanel(tableData);
-                
-                // Add to tabs if there are multiple tables
-                if (tableDataList.size() > 1) {
-                    tabbedPane.addTab(tableData.getTableName(), tablePanel);
-                } else {
-                    // If only one table, update the main preview panel
-                    tablePreviewPanel.add(tablePanel, BorderLayout.CENTER);
-                }
+            // Add to tabs if there are multiple tables
+            if (currentTableDataList.size() == 2) {
+                TableData firstTable = currentTableDataList.get(0);
+                tabbedPane.addTab(firstTable.getTableName(), createTablePanel(firstTable));
             }
+            tabbedPane.addTab(tableData.getTableName(), createTablePanel(tableData));
         }
         
         // Refresh the UI
@@ -257,20 +418,28 @@ public class MainView extends JFrame {
     private JPanel createTablePanel(TableData tableData) {
         JPanel panel = new JPanel(new BorderLayout());
         
-        // Create table headers
-        String[] headers = tableData.getHeaders().toArray(new String[0]);
-        
-        // Create table data
-        Object[][] data = new Object[tableData.getRows().size()][headers.length];
-        for (int i = 0; i < tableData.getRows().size(); i++) {
-            List<String> row = tableData.getRows().get(i);
-            for (int j = 0; j < Math.min(row.size(), headers.length); j++) {
-                data[i][j] = row.get(j);
+        // Create the table; the model reads the cells from the table data instead of copying them
+        JTable table = new JTable(new AbstractTableModel() {
+            @Override
+            public int getRowCount() {
+                return tableData.getRowCount();
             }
-        }
-        
-        // Create the table
-        JTable table = new JTable(new DefaultTableModel(data, headers));
+            
+            @Override
+            public int getColumnCount() {
+                return tableData.getHeaders().size();
+            }
+            
+            @Override
+            public String getColumnName(int column) {
+                return tableData.getHeaders().get(column);
+            }
+            
+            @Override
+            public Object getValueAt(int row, int column) {
+                return tableData.getValue(row, column);
+            }
+        });
         table.setAutoResizeMode(JTable.AUTO_RESIZE_ALL_COLUMNS);
         table.getTableHeader().setReorderingAllowed(false);
         
@@ -287,8 +456,47 @@ public class MainView extends JFrame {
     }
     
     private void generateHtml() {
-        List<TableData> tableDataList = fileController.getTableDataList();
+        if (lazyPdfDocument == null) {
+            showHtml(currentTableDataList);
+            return;
+        }
         
+        // Pages of an open PDF file that were not viewed or prefetched yet are extracted in the background
+        LazyPdfDocument document = lazyPdfDocument;
+        List<CompletableFuture<TableData>> pageTables = new ArrayList<>(document.getPageCount());
+        for (int i = 0; i < document.getPageCount(); i++) {
+            pageTables.add(document.getPageTable(i));
+        }
+        statusLabel.setText("Extracting all pages of " + document.getFile().getName() + "...");
+        
+        CompletableFuture.allOf(pageTables.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (lazyPdfDocument != document) {
+                return; // Another file was opened in the meantime
+            }
+            
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null 
+                        ? error.getCause() : error;
+                statusLabel.setText("Failed to process PDF file: " + cause.getMessage());
+                JOptionPane.showMessageDialog(this, "Error extracting PDF pages: " + cause.getMessage(), 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            List<TableData> tableDataList = new ArrayList<>(pageTables.size());
+            for (CompletableFuture<TableData> pageTable : pageTables) {
+                tableDataList.add(pageTable.join());
+            }
+            showHtml(tableDataList);
+        }));
+    }
+    
+    /**
+     * Generate the HTML of the tables, show it and open it in the browser
+     * @param tableDataList Tables to show
+     */
+    private void showHtml(List<TableData> tableDataList) {
         if (tableDataList.isEmpty()) {
             statusLabel.setText("No table data available. Please open PDF or Excel file first.");
             JOptionPane.showMessageDialog(this, "No table data available. Please open PDF or Excel file first.", 
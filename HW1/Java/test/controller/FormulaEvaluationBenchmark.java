@@ -0,0 +1,123 @@
+package controller;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import model.TableData;
+
+/**
+ * Times the workbook-wide formula evaluation of {@link FileController} against
+ * evaluating every formula cell with an evaluator of its own, which computes each
+ * cell a formula depends on again for every formula. The workbook is generated
+ * without cached results: a running total where every row depends on the row above,
+ * and a second sheet of sums, ratios and labels over it. An evaluator of its own
+ * follows the running total down to the first row, so much deeper chains than the
+ * default overflow the stack of the per-cell evaluation.
+ * Run with: java controller.FormulaEvaluationBenchmark [rows] [rounds]
+ */
+public class FormulaEvaluationBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File file = File.createTempFile("formulas", ".xlsx");
+        file.deleteOnExit();
+        double expectedTotal = writeWorkbook(file, rows);
+
+        FileController fileController = new FileController();
+        fileController.setEvaluateFormulas(true);
+
+        System.out.println("Evaluating " + rows * 5 + " formulas in " + rows + " rows");
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            int formulas = evaluatePerCell(file);
+            long perCellTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<TableData> tables = fileController.processExcelFile(file);
+            long sharedTime = System.nanoTime() - start;
+
+            // The running total of the last row holds the sum of every hour above it
+            TableData data = tables.get(0);
+            double total = Double.parseDouble(data.getRows().get(rows - 1).get(1));
+            if (total != expectedTotal) {
+                throw new AssertionError("Running total " + total + ", expected " + expectedTotal);
+            }
+            System.out.printf("Round %d: evaluator per cell %d ms (%d formulas), shared evaluator %d ms including load%n",
+                    round, perCellTime / 1000000, formulas, sharedTime / 1000000);
+        }
+    }
+
+    /**
+     * Evaluate every formula cell of a workbook with a new evaluator, so no result is reused
+     * @return Number of formula cells
+     */
+    private static int evaluatePerCell(File file) throws IOException {
+        int formulas = 0;
+        try (Workbook workbook = WorkbookFactory.create(file, null, true)) {
+            for (Sheet sheet : workbook) {
+                for (Row row : sheet) {
+                    for (Cell cell : row) {
+                        if (cell.getCellType() == CellType.FORMULA) {
+                            FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+                            evaluator.evaluate(cell);
+                            formulas++;
+                        }
+                    }
+                }
+            }
+        }
+        return formulas;
+    }
+
+    /**
+     * Write a workbook of interdependent formulas without cached results
+     * @return Expected running total of the last row
+     */
+    private static double writeWorkbook(File file, int rows) throws IOException {
+        double total = 0;
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet data = workbook.createSheet("Data");
+            Sheet calc = workbook.createSheet("Calc");
+            Row header = data.createRow(0);
+            header.createCell(0).setCellValue("Hours");
+            header.createCell(1).setCellValue("Running");
+            header = calc.createRow(0);
+            header.createCell(0).setCellValue("Total");
+            header.createCell(1).setCellValue("Share");
+            header.createCell(2).setCellValue("Even");
+            header.createCell(3).setCellValue("Label");
+
+            for (int i = 1; i <= rows; i++) {
+                int hours = i % 7 + 1;
+                total += hours;
+                Row row = data.createRow(i);
+                row.createCell(0).setCellValue(hours);
+                row.createCell(1).setCellFormula(i == 1 ? "A2" : "B" + i + "+A" + (i + 1));
+
+                row = calc.createRow(i);
+                row.createCell(0).setCellFormula("SUM(Data!A$2:A" + (i + 1) + ")");
+                row.createCell(1).setCellFormula("ROUND(Data!B" + (i + 1) + "/Data!B$" + (rows + 1) + ",4)");
+                row.createCell(2).setCellFormula("MOD(A" + (i + 1) + ",2)=0");
+                row.createCell(3).setCellFormula("\"row \"&TEXT(A" + (i + 1) + ",\"0\")");
+            }
+
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                workbook.write(outputStream);
+            }
+        }
+        return total;
+    }
+}
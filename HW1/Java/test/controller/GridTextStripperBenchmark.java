@@ -0,0 +1,110 @@
+package controller;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
+
+import model.PageLayout;
+
+/**
+ * Times {@link GridTextStripper} against the per-cell region extraction it replaced,
+ * which parsed the page once for every cell of the grid. Both run on the row and column
+ * boundaries the region-based extraction detects on each page of a PDF and must give
+ * the same cell texts. Each round prints the mean time per page.
+ * Run with: java controller.GridTextStripperBenchmark [PDF file] [rounds]
+ */
+public class GridTextStripperBenchmark {
+
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : "resources/2024-25CourseSchedule.pdf");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        FileController fileController = new FileController();
+        try (PDDocument document = PDDocument.load(file)) {
+            PageLayoutStripper layoutStripper = new PageLayoutStripper();
+            List<PageLayout> layouts = new ArrayList<>();
+            List<float[]> horizontalLines = new ArrayList<>();
+            List<float[]> verticalLines = new ArrayList<>();
+            int cellCount = 0;
+            for (int page = 0; page < document.getNumberOfPages(); page++) {
+                PageLayout layout = layoutStripper.readPage(document, page);
+                layouts.add(layout);
+                horizontalLines.add(fileController.detectHorizontalLines(layout));
+                verticalLines.add(fileController.detectVerticalLines(layout));
+                cellCount += Math.max(horizontalLines.get(page).length - 1, 0) * Math.max(verticalLines.get(page).length - 1, 0);
+            }
+
+            int pages = layouts.size() * ITERATIONS;
+            System.out.println("Extracting " + cellCount + " cells on " + layouts.size() + " pages of " + file.getName());
+            for (int round = 1; round <= rounds; round++) {
+                List<List<List<String>>> regionGrids = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    regionGrids.clear();
+                    for (int page = 0; page < layouts.size(); page++) {
+                        regionGrids.add(extractRegions(document.getPage(page), horizontalLines.get(page), verticalLines.get(page)));
+                    }
+                }
+                long regionTime = System.nanoTime() - start;
+
+                List<List<List<String>>> sweepGrids = new ArrayList<>();
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    sweepGrids.clear();
+                    GridTextStripper stripper = new GridTextStripper();
+                    for (int page = 0; page < layouts.size(); page++) {
+                        sweepGrids.add(stripper.extractGrid(layouts.get(page), horizontalLines.get(page), verticalLines.get(page)));
+                    }
+                }
+                long sweepTime = System.nanoTime() - start;
+
+                if (!regionGrids.equals(sweepGrids)) {
+                    throw new AssertionError("Cell texts differ between the region extraction and the sweep");
+                }
+                System.out.printf("Round %d: one region per cell %.1f ms/page, single sweep %.1f ms/page%n",
+                        round, regionTime / 1e6 / pages, sweepTime / 1e6 / pages);
+            }
+        }
+    }
+
+    /**
+     * The cell extraction of extractTextFromGrid before the sweep: one region per cell,
+     * each extracted with its own pass over the page
+     * @return Trimmed text of every cell, row by row
+     */
+    private static List<List<String>> extractRegions(PDPage page, float[] horizontalLines, float[] verticalLines)
+            throws IOException {
+        List<List<String>> grid = new ArrayList<>();
+        PDFTextStripperByArea stripper = new PDFTextStripperByArea();
+        stripper.setSortByPosition(true);
+        float pageHeight = page.getMediaBox().getHeight();
+
+        for (int row = 0; row < horizontalLines.length - 1; row++) {
+            float yTop = pageHeight - horizontalLines[row + 1];
+            float yBottom = pageHeight - horizontalLines[row];
+            float height = Math.abs(yBottom - yTop);
+
+            List<String> rowData = new ArrayList<>();
+            for (int col = 0; col < verticalLines.length - 1; col++) {
+                float xLeft = verticalLines[col];
+                float width = verticalLines[col + 1] - xLeft;
+
+                String regionName = "cell_" + row + "_" + col;
+                stripper.addRegion(regionName, new Rectangle((int) xLeft, (int) yTop, (int) width, (int) height));
+                stripper.extractRegions(page);
+                rowData.add(stripper.getTextForRegion(regionName).trim());
+                stripper.removeRegion(regionName);
+            }
+            grid.add(rowData);
+        }
+        return grid;
+    }
+}
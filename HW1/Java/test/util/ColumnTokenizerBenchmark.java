@@ -0,0 +1,133 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * Times {@link ColumnTokenizer} against the regular expressions it replaced on the
+ * text of every page of a PDF: splitting each line into columns as the text fallback
+ * does, then finding the time ranges as the regex fallback does. Each round prints
+ * the mean time and, where the JVM can tell, the bytes allocated per page.
+ * Run with: java util.ColumnTokenizerBenchmark [PDF file] [rounds]
+ */
+public class ColumnTokenizerBenchmark {
+
+    private static final int ITERATIONS = 200;
+
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : "resources/2024-25CourseSchedule.pdf");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<String> pageTexts = new ArrayList<>();
+        try (PDDocument document = PDDocument.load(file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            for (int page = 1; page <= document.getNumberOfPages(); page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                pageTexts.add(stripper.getText(document));
+            }
+        }
+
+        ColumnTokenizer tokenizer = new ColumnTokenizer();
+        int pages = pageTexts.size() * ITERATIONS;
+        System.out.println("Tokenizing " + pageTexts.size() + " pages of " + file.getName() + ", " + ITERATIONS + " times each");
+        for (int round = 1; round <= rounds; round++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            int regexCells = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (String text : pageTexts) {
+                    regexCells += regex(text);
+                }
+            }
+            long regexTime = System.nanoTime() - start;
+            long regexBytes = allocatedBytes() - allocated;
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            int tokenizerCells = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (String text : pageTexts) {
+                    tokenizerCells += tokenize(tokenizer, text);
+                }
+            }
+            long tokenizerTime = System.nanoTime() - start;
+            long tokenizerBytes = allocatedBytes() - allocated;
+
+            if (regexCells != tokenizerCells) {
+                throw new AssertionError("Regular expressions found " + regexCells + " cells, tokenizer " + tokenizerCells);
+            }
+            System.out.printf("Round %d: regex %.1f us/page %d B/page, tokenizer %.1f us/page %d B/page%n", round,
+                    regexTime / 1e3 / pages, regexBytes / pages, tokenizerTime / 1e3 / pages, tokenizerBytes / pages);
+        }
+    }
+
+    /**
+     * The column split of extractTableFromPage and the time search of attemptRegexTableDetection
+     * as they were before the tokenizer
+     * @return Number of columns and time ranges found
+     */
+    private static int regex(String text) {
+        int cells = 0;
+        for (String line : text.split("\\r?\\n")) {
+            List<String> columns = ColumnTokenizerTest.regexColumns(line);
+            if (columns.size() >= 2) {
+                cells += columns.size();
+            }
+        }
+
+        Pattern timePattern = Pattern.compile(ColumnTokenizerTest.TIME_PATTERN.pattern());
+        if (timePattern.matcher(text).find()) {
+            for (String line : text.split("\\r?\\n")) {
+                Matcher matcher = timePattern.matcher(line);
+                if (matcher.find()) {
+                    cells++;
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * The same work with the tokenizer, walking the lines by index like the table detection
+     * @return Number of columns and time ranges found
+     */
+    private static int tokenize(ColumnTokenizer tokenizer, String text) {
+        int cells = 0;
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineBreak = ColumnTokenizer.lineBreak(text, lineStart);
+            int lineEnd = ColumnTokenizer.lineEnd(text, lineStart, lineBreak);
+            int columns = tokenizer.tokenize(text, lineStart, lineEnd);
+            if (columns >= 2) {
+                cells += tokenizer.toArray().length;
+            }
+            if (ColumnTokenizer.findTimeRange(text, lineStart, lineEnd) >= 0) {
+                cells++;
+            }
+            lineStart = lineBreak + 1;
+        }
+        return cells;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, or 0 if the JVM does not count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+}
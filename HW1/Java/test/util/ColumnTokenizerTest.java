@@ -0,0 +1,146 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that {@link ColumnTokenizer} splits lines into the same columns and finds the
+ * same time ranges as the regular expressions it replaced, on lines written to hit each
+ * delimiter rule and time format and on random strings of the characters the tokenizer
+ * treats specially.
+ * Run with: java util.ColumnTokenizerTest
+ */
+public class ColumnTokenizerTest {
+
+    static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2}:\\d{2})\\s*-\\s*(\\d{1,2}:\\d{2})");
+
+    private static final String[] LINES = {
+        // Tabs win over spaces and pipes, empty columns are dropped
+        "CENG 101\tIntro  to Programming\t| A-101",
+        "\t\tMon\t\t",
+        // Two adjacent spaces split on every whitespace run of two or more, tabs included
+        "SEDS 519   Software  Quality \f Wed",
+        "a  b\u00a0 c\u00a0\u00a0d",
+        // Pipes only if neither of the above
+        "| Day | Time | Room |",
+        "Single spaced line | with a pipe",
+        "||| |",
+        "No delimiter at all",
+        "",
+        "   ",
+        // Time ranges: one or two hour digits, spaces around the dash, longer digit runs
+        "Mon 9:00 - 10:30  A-101",
+        "Tue 09:00-10:30",
+        "123:45 - 1:00 and 7:5 - 8:00 then 11:15 -12:45",
+        "12:30 -\t13:20",
+        "8:00 - 9:0",
+        "1:00 - 2:00 - 3:00",
+    };
+
+    public static void main(String[] args) {
+        ColumnTokenizer tokenizer = new ColumnTokenizer();
+        int checks = 0;
+
+        for (String line : LINES) {
+            checks += check(tokenizer, line);
+        }
+
+        // The lines as one text with each line break, including a missing one at the end
+        for (String lineBreak : new String[] {"\n", "\r\n", "\r\n\r\n"}) {
+            checks += check(tokenizer, String.join(lineBreak, LINES));
+            checks += check(tokenizer, String.join(lineBreak, LINES) + lineBreak);
+        }
+
+        // Random texts made of the characters the tokenizer treats specially
+        char[] alphabet = {' ', ' ', ' ', '\t', '|', '\r', '\n', '\f', 'a', 'B', '1', '9', '0', ':', '-', '\u00a0'};
+        Random random = new Random(31);
+        for (int run = 0; run < 20000; run++) {
+            char[] text = new char[random.nextInt(60)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            checks += check(tokenizer, new String(text));
+        }
+
+        System.out.println("ColumnTokenizerTest: " + checks + " lines checked");
+    }
+
+    /**
+     * Walk the lines of a text like the table detection does and compare every line with
+     * the regular expression results for the same line
+     * @return Number of lines checked
+     */
+    private static int check(ColumnTokenizer tokenizer, String text) {
+        List<String> expectedLines = new ArrayList<>(Arrays.asList(text.split("\\r?\\n")));
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineBreak = ColumnTokenizer.lineBreak(text, lineStart);
+            int lineEnd = ColumnTokenizer.lineEnd(text, lineStart, lineBreak);
+            lines.add(text.substring(lineStart, lineEnd));
+
+            tokenizer.tokenize(text, lineStart, lineEnd);
+            List<String> columns = Arrays.asList(tokenizer.toArray());
+            List<String> expectedColumns = regexColumns(text.substring(lineStart, lineEnd));
+            if (!columns.equals(expectedColumns)) {
+                throw new AssertionError("Columns of " + quote(text.substring(lineStart, lineEnd)) + ": "
+                        + columns + " vs " + expectedColumns);
+            }
+
+            int timeStart = ColumnTokenizer.findTimeRange(text, lineStart, lineEnd);
+            Matcher matcher = TIME_PATTERN.matcher(text).region(lineStart, lineEnd);
+            int expectedTimeStart = matcher.find() ? matcher.start() : -1;
+            int timeEnd = timeStart >= 0 ? ColumnTokenizer.matchTimeRange(text, timeStart, lineEnd) : -1;
+            int expectedTimeEnd = expectedTimeStart >= 0 ? matcher.end() : -1;
+            if (timeStart != expectedTimeStart || timeEnd != expectedTimeEnd) {
+                throw new AssertionError("Time range of " + quote(text.substring(lineStart, lineEnd)) + ": "
+                        + timeStart + "-" + timeEnd + " vs " + expectedTimeStart + "-" + expectedTimeEnd);
+            }
+            lineStart = lineBreak + 1;
+        }
+
+        // split drops trailing empty lines, which the table detection skips anyway
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        while (!expectedLines.isEmpty() && expectedLines.get(expectedLines.size() - 1).isEmpty()) {
+            expectedLines.remove(expectedLines.size() - 1);
+        }
+        if (!lines.equals(expectedLines)) {
+            throw new AssertionError("Lines of " + quote(text) + ": " + lines + " vs " + expectedLines);
+        }
+        return lines.size();
+    }
+
+    /**
+     * The column split previously done in extractTableFromPage, including the cleanup of empty columns
+     */
+    static List<String> regexColumns(String line) {
+        String[] columns = null;
+        if (line.contains("\t")) {
+            columns = line.split("\\t");
+        } else if (line.contains("  ")) {
+            columns = line.split("\\s{2,}");
+        } else if (line.contains("|")) {
+            columns = line.split("\\|");
+        }
+
+        List<String> cleanColumns = new ArrayList<>();
+        if (columns != null) {
+            for (String column : columns) {
+                if (!column.trim().isEmpty()) {
+                    cleanColumns.add(column.trim());
+                }
+            }
+        }
+        return cleanColumns;
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n") + "\"";
+    }
+}
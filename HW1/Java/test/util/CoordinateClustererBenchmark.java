@@ -0,0 +1,77 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times {@link CoordinateClusterer} against the list scan it replaced on dense pages
+ * of tens of thousands of glyphs, clustering their y-coordinates into rows and their
+ * x-coordinates into columns like the line detection of the grid extraction.
+ * Each round runs both on the same pages and prints the mean time per page.
+ * Run with: java util.CoordinateClustererBenchmark [glyphs per page] [rounds]
+ */
+public class CoordinateClustererBenchmark {
+
+    private static final float TOLERANCE = 5;
+    private static final int PAGES = 20;
+
+    public static void main(String[] args) {
+        int glyphs = args.length > 0 ? Integer.parseInt(args[0]) : 40000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        // A dense page of small print: about 130 glyphs on each of its lines
+        Random random = new Random(7);
+        float[][] pages = new float[PAGES * 2][];
+        for (int page = 0; page < PAGES; page++) {
+            float[] ys = new float[glyphs];
+            float[] xs = new float[glyphs];
+            for (int i = 0; i < glyphs; i++) {
+                ys[i] = 1180 - (i / 130) * 4f + random.nextFloat() * 0.5f;
+                xs[i] = 10 + (i % 130) * 2.4f;
+            }
+            pages[page * 2] = ys;
+            pages[page * 2 + 1] = xs;
+        }
+
+        System.out.println("Clustering " + PAGES + " pages of " + glyphs + " glyphs, tolerance " + TOLERANCE);
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            int listKept = 0;
+            for (float[] coordinates : pages) {
+                listKept += listScan(coordinates);
+            }
+            long listTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int clustererKept = 0;
+            for (float[] coordinates : pages) {
+                clustererKept += cluster(coordinates);
+            }
+            long clustererTime = System.nanoTime() - start;
+
+            if (listKept != clustererKept) {
+                throw new AssertionError("List scan kept " + listKept + ", clusterer kept " + clustererKept);
+            }
+            System.out.printf("Round %d: list scan %.3f ms/page, clusterer %.3f ms/page (%d boundaries)%n",
+                    round, listTime / 1e6 / PAGES, clustererTime / 1e6 / PAGES, clustererKept);
+        }
+    }
+
+    private static int listScan(float[] coordinates) {
+        List<Float> positions = new ArrayList<>();
+        for (float value : coordinates) {
+            CoordinateClustererTest.listScanAdd(positions, value, TOLERANCE);
+        }
+        positions.sort(Float::compare);
+        return positions.size();
+    }
+
+    private static int cluster(float[] coordinates) {
+        CoordinateClusterer clusterer = new CoordinateClusterer(TOLERANCE);
+        for (float value : coordinates) {
+            clusterer.add(value);
+        }
+        return clusterer.toArray().length;
+    }
+}
@@ -0,0 +1,114 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link CoordinateClusterer} keeps exactly the coordinates of the list scan
+ * it replaced: a value is kept if no value kept before it lies closer than the tolerance.
+ * The coordinates are edge cases around the tolerance, glyph positions of generated
+ * table pages and random values.
+ * Run with: java util.CoordinateClustererTest
+ */
+public class CoordinateClustererTest {
+
+    public static void main(String[] args) {
+        int checks = 0;
+
+        // Values exactly one tolerance apart are both kept, closer ones are not
+        checks += check(new float[] {10, 15, 20, 14.999f, 5.001f, 5}, 5);
+        checks += check(new float[] {7, 7, 7, -7, 0, -2.5f, 2.5f}, 2.5f);
+        checks += check(new float[] {100, 50, 75, 62.5f, 87.5f, 56.25f}, 12.5f);
+        checks += check(new float[0], 5);
+
+        // Row and column coordinates of generated pages, with the tolerances of the grid detection
+        Random random = new Random(2024);
+        for (int page = 0; page < 50; page++) {
+            float[] rows = tablePage(random, true);
+            float[] columns = tablePage(random, false);
+            checks += check(rows, 5) + check(rows, 10) + check(columns, 5) + check(columns, 10);
+        }
+
+        // Whole and half values hit the exact tolerance distance and duplicates
+        for (int run = 0; run < 200; run++) {
+            float[] coordinates = new float[random.nextInt(2000)];
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i] = run % 2 == 0 ? random.nextFloat() * 800 : random.nextInt(400) / 2f;
+            }
+            checks += check(coordinates, 1 + random.nextInt(20));
+        }
+
+        System.out.println("CoordinateClustererTest: " + checks + " checks passed");
+    }
+
+    /**
+     * Coordinates of the glyphs of a table page in content stream order: every row
+     * sits on its baseline with a little jitter, every column starts at its boundary
+     * and its glyphs follow at the advance width
+     * @param rows true for the y-coordinates of the rows, false for the x-coordinates of the glyphs
+     */
+    static float[] tablePage(Random random, boolean rows) {
+        int rowCount = 10 + random.nextInt(50);
+        int columnCount = 2 + random.nextInt(10);
+        float lineHeight = 8 + random.nextInt(8);
+        float columnWidth = 40 + random.nextInt(40);
+        float advance = 4 + random.nextFloat() * 3;
+
+        float[] coordinates = new float[rowCount * columnCount * 8];
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            float baseline = 800 - row * lineHeight;
+            for (int column = 0; column < columnCount; column++) {
+                int glyphs = 1 + random.nextInt(8);
+                for (int glyph = 0; glyph < glyphs; glyph++) {
+                    coordinates[count++] = rows
+                            ? baseline + (random.nextFloat() - 0.5f)
+                            : 30 + column * columnWidth + glyph * advance;
+                }
+            }
+        }
+        return Arrays.copyOf(coordinates, count);
+    }
+
+    /**
+     * Cluster coordinates with the clusterer and with the list scan and compare the kept values
+     * @return Number of checks done
+     */
+    private static int check(float[] coordinates, float tolerance) {
+        CoordinateClusterer clusterer = new CoordinateClusterer(tolerance);
+        List<Float> expected = new ArrayList<>();
+        for (float value : coordinates) {
+            boolean kept = clusterer.add(value);
+            boolean expectedKept = listScanAdd(expected, value, tolerance);
+            if (kept != expectedKept) {
+                throw new AssertionError("Value " + value + " kept=" + kept + ", list scan kept=" + expectedKept);
+            }
+        }
+
+        expected.sort(Float::compare);
+        float[] expectedArray = new float[expected.size()];
+        for (int i = 0; i < expectedArray.length; i++) {
+            expectedArray[i] = expected.get(i);
+        }
+        if (!Arrays.equals(clusterer.toArray(), expectedArray)) {
+            throw new AssertionError("Clusters differ at tolerance " + tolerance + ": "
+                    + Arrays.toString(clusterer.toArray()) + " vs " + expected);
+        }
+        return 1;
+    }
+
+    /**
+     * The clustering previously done in detectHorizontalLines and detectVerticalLines
+     */
+    static boolean listScanAdd(List<Float> positions, float value, float tolerance) {
+        for (Float existing : positions) {
+            if (Math.abs(existing - value) < tolerance) {
+                return false;
+            }
+        }
+        positions.add(value);
+        return true;
+    }
+}